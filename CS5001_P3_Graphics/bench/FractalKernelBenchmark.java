@@ -0,0 +1,95 @@
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark comparing the built-in scalar Mandelbrot kernel with the generic FractalKernel path, to check that plugging in a kernel costs nothing.
+ *
+ * Every operation renders the same frame with the serial scalar calculator, either with no kernel set (BUILT_IN, calcMandel) or with
+ * FractalKernel.mandelbrot() (MANDELBROT). With polluted=true every kernel is first used to render a frame during setup, so that the row call sites
+ * in MandelbrotCalculator have seen several kernel types, as in an application switching between fractals; the MANDELBROT score should not change.
+ *
+ * Build and run as for MandelbrotBenchmark, for example
+ *
+ * java -cp out:jmh-core.jar:jopt-simple.jar:commons-math3.jar FractalKernelBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class FractalKernelBenchmark {
+
+    /**
+     * The benchmarked kernel paths.
+     */
+    public enum Path { BUILT_IN, MANDELBROT }
+
+    @Param({"512"})
+    public int resolution;
+
+    @Param({"100", "1000"})
+    public int maxIterations;
+
+    @Param({"BUILT_IN", "MANDELBROT"})
+    public Path path;
+
+    @Param({"false", "true"})
+    public boolean polluted;
+
+    private MandelbrotCalculator calculator;
+    private int[] frame;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        calculator = new MandelbrotCalculator();
+        frame = new int[resolution * resolution];
+        if (polluted) {
+            for (FractalKernel kernel : new FractalKernel[] {FractalKernel.julia(-0.8, 0.156), FractalKernel.multibrot(3), FractalKernel.burningShip(), FractalKernel.mandelbrot()}) {
+                calculator.setKernel(kernel);
+                for (int i = 0; i < 20; i++) {
+                    render();
+                }
+            }
+        }
+        calculator.setKernel(path == Path.MANDELBROT ? FractalKernel.mandelbrot() : null);
+    }
+
+    /**
+     * Renders the initial view into a reused flat buffer.
+     */
+    @Benchmark
+    public int[] render() {
+        calculator.calcMandelbrotSet(frame, 0, resolution, resolution, resolution, MandelbrotCalculator.INITIAL_MIN_REAL, MandelbrotCalculator.INITIAL_MAX_REAL, MandelbrotCalculator.INITIAL_MIN_IMAGINARY, MandelbrotCalculator.INITIAL_MAX_IMAGINARY, maxIterations, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+        return frame;
+    }
+
+    /**
+     * Runs the benchmark.
+     * @param args JMH command line options.
+     * @throws Exception if the options are invalid or the benchmark fails.
+     */
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(FractalKernelBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,210 @@
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmarks for the Mandelbrot kernel and frame renderer, so that every rendering backend is measured against the same views and settings.
+ *
+ * Each benchmark renders one frame (or one row, for the kernel benchmark) per operation, for every combination of resolution, maxIterations, view and renderer.
+ * The views are an all-exterior view where every pixel escapes within a few iterations, the initial view, and a zoom onto the boundary near -0.75 + 0.1i
+ * where most pixels take many iterations. Two auxiliary counters are reported alongside the frame rate:
+ *   pixels      pixels rendered per second; 1e9 / pixels is the cost in ns/pixel
+ *   iterations  escape-time iterations per second, counting the iteration values of the frame so that shortcuts such as MARIANI_SILVER are credited
+ *               with the work they avoid
+ *
+ * The benchmarks are compiled together with ../src against jmh-core and the jmh-generator-annprocess annotation processor, for example
+ *
+ * javac -cp jmh-core.jar:jmh-generator-annprocess.jar -d out ../src/*.java *.java
+ * javac --add-modules jdk.incubator.vector -cp out -d out ../vector/*.java
+ * java -cp out:jmh-core.jar:jopt-simple.jar:commons-math3.jar MandelbrotBenchmark -p resolution=1024
+ *
+ * main accepts the usual JMH command line options, writes the full JMH results to mandelbrot-benchmark.json and prints a CSV summary with ns/pixel and
+ * iterations/second for each run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class MandelbrotBenchmark {
+
+    /**
+     * The benchmarked views, given as (minReal, maxReal, minImaginary, maxImaginary).
+     */
+    public enum View {
+        EXTERIOR(1.0, 2.0, 1.0, 2.0),
+        DEFAULT(MandelbrotCalculator.INITIAL_MIN_REAL, MandelbrotCalculator.INITIAL_MAX_REAL, MandelbrotCalculator.INITIAL_MIN_IMAGINARY, MandelbrotCalculator.INITIAL_MAX_IMAGINARY),
+        BOUNDARY(-0.7503, -0.7493, 0.0995, 0.1005);
+
+        final double minReal;
+        final double maxReal;
+        final double minImaginary;
+        final double maxImaginary;
+
+        View(double minReal, double maxReal, double minImaginary, double maxImaginary) {
+            this.minReal = minReal;
+            this.maxReal = maxReal;
+            this.minImaginary = minImaginary;
+            this.maxImaginary = maxImaginary;
+        }
+    }
+
+    /**
+     * The benchmarked calculator configurations.
+     */
+    public enum Renderer {
+        SERIAL, PARALLEL, VECTOR, PARALLEL_VECTOR, MARIANI_SILVER, INTERIOR_CHECKS, FLOAT_VECTOR, DOUBLE_DOUBLE;
+
+        void configure(MandelbrotCalculator calculator) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            calculator.setParallelism(this == PARALLEL || this == PARALLEL_VECTOR ? cores : 1);
+            calculator.setBackend(this == VECTOR || this == PARALLEL_VECTOR || this == FLOAT_VECTOR ? MandelbrotCalculator.Backend.VECTOR : MandelbrotCalculator.Backend.SCALAR);
+            calculator.setStrategy(this == MARIANI_SILVER ? MandelbrotCalculator.Strategy.MARIANI_SILVER : MandelbrotCalculator.Strategy.PER_PIXEL);
+            calculator.setCardioidCheck(this == INTERIOR_CHECKS);
+            calculator.setPeriodicityCheck(this == INTERIOR_CHECKS);
+            calculator.setPrecision(this == FLOAT_VECTOR ? MandelbrotCalculator.Precision.FLOAT
+                    : this == DOUBLE_DOUBLE ? MandelbrotCalculator.Precision.DOUBLE_DOUBLE : MandelbrotCalculator.Precision.DOUBLE);
+        }
+    }
+
+    @Param({"256", "1024"})
+    public int resolution;
+
+    @Param({"100", "1000"})
+    public int maxIterations;
+
+    @Param({"EXTERIOR", "DEFAULT", "BOUNDARY"})
+    public View view;
+
+    @Param({"SERIAL", "PARALLEL", "VECTOR", "PARALLEL_VECTOR", "MARIANI_SILVER", "INTERIOR_CHECKS", "FLOAT_VECTOR", "DOUBLE_DOUBLE"})
+    public Renderer renderer;
+
+    private MandelbrotCalculator calculator;
+    private int[] frame;
+    private int[] row;
+    private long frameIterations;
+    private long rowIterations;
+
+    /**
+     * Counters reported as rates next to the frame rate.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Work {
+        public long pixels;
+        public long iterations;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            pixels = 0;
+            iterations = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // The work done per frame is measured once with the plain serial kernel, so every renderer is credited with the same work
+        MandelbrotCalculator reference = new MandelbrotCalculator();
+        int[][] mandelbrotData = reference.calcMandelbrotSet(resolution, resolution, view.minReal, view.maxReal, view.minImaginary, view.maxImaginary, maxIterations, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+        for (int[] values : mandelbrotData) {
+            for (int value : values) {
+                frameIterations += value;
+            }
+        }
+        for (int value : mandelbrotData[resolution / 2]) {
+            rowIterations += value;
+        }
+
+        calculator = new MandelbrotCalculator();
+        renderer.configure(calculator);
+        frame = new int[resolution * resolution];
+        row = new int[resolution];
+    }
+
+    /**
+     * Renders a full frame into a new int[][], as a GUI calling calcMandelbrotSet does.
+     */
+    @Benchmark
+    public int[][] frame(Work work) {
+        work.pixels += (long) resolution * resolution;
+        work.iterations += frameIterations;
+        return calculator.calcMandelbrotSet(resolution, resolution, view.minReal, view.maxReal, view.minImaginary, view.maxImaginary, maxIterations, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+    }
+
+    /**
+     * Renders a full frame into a reused flat buffer, without allocating per frame.
+     */
+    @Benchmark
+    public int[] flatFrame(Work work) {
+        work.pixels += (long) resolution * resolution;
+        work.iterations += frameIterations;
+        calculator.calcMandelbrotSet(frame, 0, resolution, resolution, resolution, view.minReal, view.maxReal, view.minImaginary, view.maxImaginary, maxIterations, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+        return frame;
+    }
+
+    /**
+     * Iterates the middle row of the view on the calling thread, measuring the escape-time kernel without tiling.
+     */
+    @Benchmark
+    public int[] kernelRow(Work work) {
+        work.pixels += resolution;
+        work.iterations += rowIterations;
+        double realStep = (view.maxReal - view.minReal) / resolution;
+        double cImaginary = view.minImaginary + (resolution / 2) * ((view.maxImaginary - view.minImaginary) / resolution);
+        calculator.calcRow(row, 0, 0, resolution, view.minReal, realStep, cImaginary, maxIterations, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+        return row;
+    }
+
+    /**
+     * Runs the benchmarks, writing the JMH results as JSON and a CSV summary with ns/pixel and iterations/second to standard output.
+     * @param args JMH command line options, for example -p resolution=256 to restrict a parameter.
+     * @throws Exception if the options are invalid or the benchmarks fail.
+     */
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(MandelbrotBenchmark.class.getSimpleName())
+                .resultFormat(ResultFormatType.JSON)
+                .result("mandelbrot-benchmark.json")
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        System.out.println("benchmark,resolution,maxIterations,view,renderer,frames_per_second,ns_per_pixel,iterations_per_second");
+        for (RunResult result : results) {
+            Map<String, Result> secondary = result.getSecondaryResults();
+            double pixelsPerSecond = secondary.get("pixels").getScore();
+            double iterationsPerSecond = secondary.get("iterations").getScore();
+            System.out.println(String.join(",",
+                    result.getParams().getBenchmark(),
+                    result.getParams().getParam("resolution"),
+                    result.getParams().getParam("maxIterations"),
+                    result.getParams().getParam("view"),
+                    result.getParams().getParam("renderer"),
+                    Double.toString(result.getPrimaryResult().getScore()),
+                    Double.toString(1e9 / pixelsPerSecond),
+                    Double.toString(iterationsPerSecond)));
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/**
+ * The FractalKernel class is the escape-time iteration used by MandelbrotCalculator when a kernel is set, so that other fractals can be rendered with
+ * the same tiling, parallelism and strategies as the Mandelbrot set. Four kernels are provided:
+ *   Mandelbrot    Z_n+1 = Z_n^2 + C with Z_0 = 0, C the pixel
+ *   Julia         Z_n+1 = Z_n^2 + K with Z_0 the pixel, K a fixed constant
+ *   Multibrot     Z_n+1 = Z_n^power + C with Z_0 = 0, for an integer power of at least 2
+ *   BurningShip   Z_n+1 = (|Re Z_n| + i|Im Z_n|)^2 + C with Z_0 = 0; the ship is upright with the imaginary axis pointing down
+ *
+ * Every kernel counts iterations exactly as calcMandel does, so the Mandelbrot kernel produces the same frame as the built-in scalar kernel.
+ *
+ * The pixel loop is in calcRow, which every kernel implements itself rather than inheriting, and which calls the kernel's own iterate on a final class.
+ * Each loop therefore only ever sees one kernel, so the JIT inlines iterate into it and specialises it for that kernel, while the one virtual call per row
+ * stays cheap even when several kernels are in use. New kernels should follow the same pattern: a final class implementing both methods.
+ *
+ * Example usage -- the Julia set for K = -0.8 + 0.156i
+ *
+ * mandelCalc.setKernel(FractalKernel.julia(-0.8, 0.156));
+ * int[][] juliaData = mandelCalc.calcMandelbrotSet(800, 800, -1.6, 1.6, -1.6, 1.6, 500, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+ */
+public abstract class FractalKernel {
+
+    /**
+     * Iterates one point.
+     * @param x the real component of the pixel.
+     * @param y the imaginary component of the pixel.
+     * @param maxIterations the maximum number of iterations.
+     * @param radiusSquared the square of the escape radius.
+     * @return the number of iterations for Z to escape the radius, or maxIterations if it never escaped.
+     */
+    public abstract int iterate(double x, double y, int maxIterations, double radiusSquared);
+
+    /**
+     * Iterates every xStep-th pixel of a row: the value for the pixel with real component minReal + (x0 + i * xStep) * realStep is written to out[offset + i].
+     * See calcRow in MandelbrotCalculator for the parameters.
+     */
+    public abstract void calcRow(int[] out, int offset, int x0, int xStep, int count, double minReal, double realStep, double y, int maxIterations, double radiusSquared);
+
+    /**
+     * Names the kernel and its parameters in a way that is the same in every run, so that MandelbrotTileCache can persist its tiles.
+     * The provided kernels return their toString. Kernels which cannot name themselves stably return null, the default, and their tiles are
+     * then only cached in memory.
+     * @return the stable name of the kernel, or null if it has none.
+     */
+    public String cacheKey() {
+        return null;
+    }
+
+    /**
+     * @return the Mandelbrot kernel.
+     */
+    public static Mandelbrot mandelbrot() {
+        return new Mandelbrot();
+    }
+
+    /**
+     * @param kReal the real component of the constant K.
+     * @param kImaginary the imaginary component of the constant K.
+     * @return the Julia kernel for the constant K.
+     */
+    public static Julia julia(double kReal, double kImaginary) {
+        return new Julia(kReal, kImaginary);
+    }
+
+    /**
+     * @param power the power of Z, at least 2.
+     * @return the Multibrot kernel for the given power.
+     */
+    public static Multibrot multibrot(int power) {
+        return new Multibrot(power);
+    }
+
+    /**
+     * @return the Burning Ship kernel.
+     */
+    public static BurningShip burningShip() {
+        return new BurningShip();
+    }
+
+
+
+    /**
+     * Z_n+1 = Z_n^2 + C.
+     */
+    public static final class Mandelbrot extends FractalKernel {
+
+        @Override
+        public int iterate(double x, double y, int maxIterations, double radiusSquared) {
+            int iterations = 0;
+            double zr = 0;
+            double zi = 0;
+            while (iterations < maxIterations) {
+                double zr2 = zr * zr;
+                double zi2 = zi * zi;
+                double nzi = 2 * zr * zi + y;
+                zr = zr2 - zi2 + x;
+                zi = nzi;
+                iterations++;
+                if ((zr2 + zi2) > radiusSquared)
+                    break;
+            }
+            return iterations;
+        }
+
+        @Override
+        public void calcRow(int[] out, int offset, int x0, int xStep, int count, double minReal, double realStep, double y, int maxIterations, double radiusSquared) {
+            for (int i = 0; i < count; i++) {
+                out[offset + i] = iterate(minReal + (x0 + i * xStep) * realStep, y, maxIterations, radiusSquared);
+            }
+        }
+
+        @Override
+        public String cacheKey() {
+            return toString();
+        }
+
+        @Override
+        public String toString() {
+            return "Mandelbrot";
+        }
+    }
+
+    /**
+     * Z_n+1 = Z_n^2 + K, with Z_0 the pixel.
+     */
+    public static final class Julia extends FractalKernel {
+        private final double kReal;
+        private final double kImaginary;
+
+        /**
+         * @param kReal the real component of the constant K.
+         * @param kImaginary the imaginary component of the constant K.
+         */
+        public Julia(double kReal, double kImaginary) {
+            this.kReal = kReal;
+            this.kImaginary = kImaginary;
+        }
+
+        @Override
+        public int iterate(double x, double y, int maxIterations, double radiusSquared) {
+            int iterations = 0;
+            double zr = x;
+            double zi = y;
+            while (iterations < maxIterations) {
+                double zr2 = zr * zr;
+                double zi2 = zi * zi;
+                double nzi = 2 * zr * zi + kImaginary;
+                zr = zr2 - zi2 + kReal;
+                zi = nzi;
+                iterations++;
+                if ((zr2 + zi2) > radiusSquared)
+                    break;
+            }
+            return iterations;
+        }
+
+        @Override
+        public void calcRow(int[] out, int offset, int x0, int xStep, int count, double minReal, double realStep, double y, int maxIterations, double radiusSquared) {
+            for (int i = 0; i < count; i++) {
+                out[offset + i] = iterate(minReal + (x0 + i * xStep) * realStep, y, maxIterations, radiusSquared);
+            }
+        }
+
+        /**
+         * @return the real component of the constant K.
+         */
+        public double getKReal() {
+            return kReal;
+        }
+
+        /**
+         * @return the imaginary component of the constant K.
+         */
+        public double getKImaginary() {
+            return kImaginary;
+        }
+
+        @Override
+        public String cacheKey() {
+            return toString();
+        }
+
+        @Override
+        public String toString() {
+            return "Julia(" + kReal + (kImaginary < 0 ? " - " : " + ") + Math.abs(kImaginary) + "i)";
+        }
+    }
+
+    /**
+     * Z_n+1 = Z_n^power + C, with Z^power formed by repeated complex multiplication.
+     */
+    public static final class Multibrot extends FractalKernel {
+        private final int power;
+
+        /**
+         * @param power the power of Z, at least 2.
+         */
+        public Multibrot(int power) {
+            if (power < 2) {
+                throw new IllegalArgumentException("Power must be at least 2: " + power);
+            }
+            this.power = power;
+        }
+
+        @Override
+        public int iterate(double x, double y, int maxIterations, double radiusSquared) {
+            int iterations = 0;
+            double zr = 0;
+            double zi = 0;
+            while (iterations < maxIterations) {
+                double magnitudeSquared = zr * zr + zi * zi;
+                double pr = zr;
+                double pi = zi;
+                for (int k = 1; k < power; k++) {
+                    double npr = pr * zr - pi * zi;
+                    pi = pr * zi + pi * zr;
+                    pr = npr;
+                }
+                zr = pr + x;
+                zi = pi + y;
+                iterations++;
+                if (magnitudeSquared > radiusSquared)
+                    break;
+            }
+            return iterations;
+        }
+
+        @Override
+        public void calcRow(int[] out, int offset, int x0, int xStep, int count, double minReal, double realStep, double y, int maxIterations, double radiusSquared) {
+            for (int i = 0; i < count; i++) {
+                out[offset + i] = iterate(minReal + (x0 + i * xStep) * realStep, y, maxIterations, radiusSquared);
+            }
+        }
+
+        /**
+         * @return the power of Z.
+         */
+        public int getPower() {
+            return power;
+        }
+
+        @Override
+        public String cacheKey() {
+            return toString();
+        }
+
+        @Override
+        public String toString() {
+            return "Multibrot(" + power + ")";
+        }
+    }
+
+    /**
+     * Z_n+1 = (|Re Z_n| + i|Im Z_n|)^2 + C.
+     */
+    public static final class BurningShip extends FractalKernel {
+
+        @Override
+        public int iterate(double x, double y, int maxIterations, double radiusSquared) {
+            int iterations = 0;
+            double zr = 0;
+            double zi = 0;
+            while (iterations < maxIterations) {
+                double zr2 = zr * zr;
+                double zi2 = zi * zi;
+                double nzi = 2 * Math.abs(zr * zi) + y;
+                zr = zr2 - zi2 + x;
+                zi = nzi;
+                iterations++;
+                if ((zr2 + zi2) > radiusSquared)
+                    break;
+            }
+            return iterations;
+        }
+
+        @Override
+        public void calcRow(int[] out, int offset, int x0, int xStep, int count, double minReal, double realStep, double y, int maxIterations, double radiusSquared) {
+            for (int i = 0; i < count; i++) {
+                out[offset + i] = iterate(minReal + (x0 + i * xStep) * realStep, y, maxIterations, radiusSquared);
+            }
+        }
+
+        @Override
+        public String cacheKey() {
+            return toString();
+        }
+
+        @Override
+        public String toString() {
+            return "BurningShip";
+        }
+    }
+}
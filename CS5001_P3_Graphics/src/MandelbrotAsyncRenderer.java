@@ -0,0 +1,285 @@
+import java.io.Closeable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The MandelbrotAsyncRenderer class renders frames in the background and returns a handle for each one, so that a GUI can drop frames which have
+ * become obsolete, for example while the user is scrolling, instead of waiting for every requested frame to complete.
+ *
+ * Frames are rendered one at a time, in the order they were submitted, on a scheduler thread which drives the calculator's tiling and parallelism settings.
+ * Cancelling a handle drops the frame if it has not started yet. If it has started, no further tiles are started, and with the PER_PIXEL strategy tiles
+ * already in progress stop at the end of their current row; a Mariani-Silver tile is always completed, which is quick.
+ *
+ * Each frame starts with a coarse preview, one pixel in every PREVIEW_FACTOR x PREVIEW_FACTOR block, costing about 1/64 of the frame.
+ * If a frame has a deadline and is not finished by then it stops, and its result is the finished tiles with the rest of the frame filled from the preview.
+ * The preview itself is always completed, so a deadline shorter than the preview takes is overrun by the time of the preview.
+ * getWithin gives the same kind of result while leaving the frame to carry on rendering.
+ *
+ * Example usage -- render the latest view, dropping the previous one
+ *
+ * MandelbrotAsyncRenderer renderer = new MandelbrotAsyncRenderer(mandelCalc);
+ * if (current != null) {
+ *     current.cancel(false);
+ * }
+ * current = renderer.submit(800, 800, minReal, maxReal, minImaginary, maxImaginary, maxIterations, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED, 100, TimeUnit.MILLISECONDS);
+ * int[][] madelbrotData = current.get();
+ *
+ * MandelbrotAsyncRenderer uses a platform thread as its scheduler rather than a virtual thread, so that it runs on Java 17.
+ */
+public class MandelbrotAsyncRenderer implements Closeable {
+
+    // Each preview pixel stands for a block of PREVIEW_FACTOR x PREVIEW_FACTOR pixels of the frame
+    protected static final int PREVIEW_FACTOR = 8;
+
+    private final MandelbrotCalculator calculator;
+    private final ExecutorService scheduler;
+
+    /**
+     * Constructs an asynchronous renderer.
+     * @param calculator the calculator used to render frames, with its tiling, parallelism, backend, strategy and precision settings.
+     */
+    public MandelbrotAsyncRenderer(MandelbrotCalculator calculator) {
+        if (calculator == null) {
+            throw new IllegalArgumentException("Calculator cannot be null");
+        }
+        this.calculator = calculator;
+        this.scheduler = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mandelbrot-async-renderer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Submits a frame to render without a deadline. See calcMandelbrotSet in MandelbrotCalculator for the parameters.
+     * @return the handle of the frame.
+     */
+    public RenderHandle submit(int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared) {
+        return submit(xResolution, yResolution, minReal, maxReal, minImaginary, maxImaginary, maxIterations, radiusSquared, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Submits a frame to render which stops at a deadline. See calcMandelbrotSet in MandelbrotCalculator for the other parameters.
+     * @param deadline the time after submission by which the frame must be ready; a frame which is not finished by then completes with a preview.
+     * @param unit the unit of deadline.
+     * @return the handle of the frame.
+     * @throws IllegalStateException if the renderer has been closed.
+     */
+    public RenderHandle submit(int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared, long deadline, TimeUnit unit) {
+        if (xResolution < 0 || yResolution < 0) {
+            throw new IllegalArgumentException("Resolution cannot be negative: " + xResolution + "x" + yResolution);
+        }
+        long deadlineNanos = unit.toNanos(deadline);
+        long now = System.nanoTime();
+        RenderHandle handle = new RenderHandle(xResolution, yResolution, minReal, maxReal, minImaginary, maxImaginary, maxIterations, radiusSquared,
+                deadlineNanos > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + deadlineNanos);
+        try {
+            scheduler.execute(handle.task);
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("Renderer is closed", e);
+        }
+        return handle;
+    }
+
+    /**
+     * Stops the scheduler thread. Frames which have not started are cancelled, so get on their handles throws CancellationException; the frame in
+     * progress is left to finish.
+     */
+    @Override
+    public void close() {
+        for (Runnable queued : scheduler.shutdownNow()) {
+            if (queued instanceof RenderTask) {
+                ((RenderTask) queued).handle.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * The scheduler's task for a frame, which keeps its handle so that close can cancel frames still queued.
+     */
+    private static final class RenderTask extends FutureTask<int[][]> {
+        private final RenderHandle handle;
+
+        private RenderTask(RenderHandle handle) {
+            super(handle::render);
+            this.handle = handle;
+        }
+    }
+
+
+
+    /**
+     * Handle of a submitted frame. get returns the frame as calcMandelbrotSet would, or with a deadline, possibly a preview; see isComplete.
+     */
+    public final class RenderHandle implements Future<int[][]> {
+        private final int xResolution;
+        private final int yResolution;
+        private final double minReal;
+        private final double minImaginary;
+        private final double realStep;
+        private final double imaginaryStep;
+        private final int maxIterations;
+        private final double radiusSquared;
+        private final long deadlineAt;
+        private final RenderTask task;
+
+        private volatile boolean cancelled = false;
+        private volatile boolean complete = false;
+
+        // The frame, the preview and which tiles of the frame are finished; set by the scheduler thread before rendering
+        private volatile int[] frame;
+        private volatile int[] preview;
+        private volatile AtomicIntegerArray tilesDone;
+        private int tileSize;
+        private int tilesX;
+
+        private RenderHandle(int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared, long deadlineAt) {
+            this.xResolution = xResolution;
+            this.yResolution = yResolution;
+            this.minReal = minReal;
+            this.minImaginary = minImaginary;
+            this.realStep = (maxReal - minReal)/xResolution;
+            this.imaginaryStep = (maxImaginary - minImaginary)/yResolution;
+            this.maxIterations = maxIterations;
+            this.radiusSquared = radiusSquared;
+            this.deadlineAt = deadlineAt;
+            this.task = new RenderTask(this);
+        }
+
+        private int[][] render() {
+            if (cancelled) {
+                return null;
+            }
+            int previewWidth = (xResolution + PREVIEW_FACTOR - 1) / PREVIEW_FACTOR;
+            int previewHeight = (yResolution + PREVIEW_FACTOR - 1) / PREVIEW_FACTOR;
+            int[] coarse = new int[previewWidth * previewHeight];
+            calculator.calcRegion(coarse, 0, previewWidth, 0, 0, previewWidth, previewHeight, minReal, realStep * PREVIEW_FACTOR, minImaginary, imaginaryStep * PREVIEW_FACTOR, maxIterations, radiusSquared);
+            tileSize = calculator.getTileSize();
+            tilesX = (xResolution + tileSize - 1) / tileSize;
+            int tilesY = (yResolution + tileSize - 1) / tileSize;
+            tilesDone = new AtomicIntegerArray(tilesX * tilesY);
+            frame = new int[xResolution * yResolution];
+            preview = coarse;
+
+            boolean rowByRow = calculator.getStrategy() == MandelbrotCalculator.Strategy.PER_PIXEL;
+            calculator.forEachTile(xResolution, yResolution, (x0, y0, width, height) -> {
+                if (stopped()) {
+                    return;
+                }
+                if (rowByRow) {
+                    for (int y = y0; y < y0 + height; y++) {
+                        if (stopped()) {
+                            return;
+                        }
+                        calculator.renderTile(frame, y * xResolution + x0, xResolution, x0, y, width, 1, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+                    }
+                } else {
+                    calculator.renderTile(frame, y0 * xResolution + x0, xResolution, x0, y0, width, height, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+                }
+                tilesDone.set((y0 / tileSize) * tilesX + x0 / tileSize, 1);
+            });
+            complete = !stopped();
+            return composite();
+        }
+
+        private boolean stopped() {
+            return cancelled || System.nanoTime() - deadlineAt > 0;
+        }
+
+        /**
+         * Builds the frame from the finished tiles, filling unfinished tiles from the preview. Returns null if the preview has not been rendered.
+         */
+        private int[][] composite() {
+            int[] coarse = preview;
+            if (coarse == null) {
+                return null;
+            }
+            int previewWidth = (xResolution + PREVIEW_FACTOR - 1) / PREVIEW_FACTOR;
+            int[][] mandelbrotData = new int[yResolution][xResolution];
+            for (int y = 0; y < yResolution; y++) {
+                int[] row = mandelbrotData[y];
+                for (int x0 = 0; x0 < xResolution; x0 += tileSize) {
+                    int width = Math.min(tileSize, xResolution - x0);
+                    if (tilesDone.get((y / tileSize) * tilesX + x0 / tileSize) == 1) {
+                        System.arraycopy(frame, y * xResolution + x0, row, x0, width);
+                    } else {
+                        int previewRow = (y / PREVIEW_FACTOR) * previewWidth;
+                        for (int x = x0; x < x0 + width; x++) {
+                            row[x] = coarse[previewRow + x / PREVIEW_FACTOR];
+                        }
+                    }
+                }
+            }
+            return mandelbrotData;
+        }
+
+        /**
+         * Cancels the frame. A frame which has not started is dropped; a frame in progress stops starting tiles and stops tiles in progress at the next row.
+         * @param mayInterruptIfRunning ignored, rendering threads are never interrupted.
+         * @return false if the frame had already completed or been cancelled.
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            cancelled = true;
+            return task.cancel(false);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return task.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return task.isDone();
+        }
+
+        /**
+         * @return true if the frame finished every tile, false if it stopped at its deadline and get returns a preview.
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        /**
+         * Waits for the frame to finish or reach its deadline.
+         * @return the frame, which is a preview if isComplete is false.
+         */
+        @Override
+        public int[][] get() throws InterruptedException, ExecutionException {
+            return task.get();
+        }
+
+        @Override
+        public int[][] get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return task.get(timeout, unit);
+        }
+
+        /**
+         * Waits up to the given time for the frame, and returns the best frame available if it is not ready by then: the finished tiles, with
+         * the rest filled from the preview. Rendering carries on afterwards.
+         * @param timeout the longest time to wait.
+         * @param unit the unit of timeout.
+         * @return the frame or a preview, or null if the frame has not started rendering yet.
+         * @throws InterruptedException if the calling thread is interrupted while waiting.
+         * @throws CancellationException if the frame was cancelled.
+         */
+        public int[][] getWithin(long timeout, TimeUnit unit) throws InterruptedException {
+            try {
+                return task.get(timeout, unit);
+            } catch (TimeoutException e) {
+                return composite();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Rendering failed", e.getCause());
+            }
+        }
+    }
+}
@@ -27,6 +27,14 @@ of the authors and should not be interpreted as representing official policies,
 either expressed or implied, of the FreeBSD Project.
 */
 
+import java.math.BigDecimal;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
 /**
  * The MandelbrotCalculator class contains methods which establish the Mandelbrot set.
  * The calcMandelbrotSet method below iterates over X,Y positions and establishes for specified parameter values a 2-D array containing
@@ -38,6 +46,57 @@ either expressed or implied, of the FreeBSD Project.
  * MandelbrotCalculator mandelCalc = new MandelbrotCalculator();
  * int[][] madelbrotData = mandelCalc.calcMandelbrotSet(800, 800, MandelbrotCalculator.INITIAL_MIN_REAL, MandelbrotCalculator.INITIAL_MAX_REAL, MandelbrotCalculator.INITIAL_MIN_IMAGINARY, MandelbrotCalculator.INITIAL_MAX_IMAGINARY, MandelbrotCalculator.INITIAL_MAX_ITERATIONS, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
  *
+ * To render the same frame on several cores, set the parallelism level before calling calcMandelbrotSet. The frame is then split into tiles which are
+ * rendered on a fork-join pool; the result is identical to the serial path.
+ *
+ * mandelCalc.setParallelism(Runtime.getRuntime().availableProcessors());
+ *
+ * On JVMs started with --add-modules jdk.incubator.vector the escape-time kernel can iterate a whole SIMD vector of adjacent pixels at once.
+ * If the Vector API or the separately compiled vector kernel (see MandelbrotVectorKernel in vector/) is not available the scalar kernel is used instead;
+ * both produce the same iteration counts.
+ *
+ * mandelCalc.setBackend(MandelbrotCalculator.Backend.VECTOR);
+ *
+ * A GUI or server rendering many frames can reuse one flat buffer instead of allocating a new 2-D array per frame, pixel [y][x] being stored at out[y * 800 + x]:
+ *
+ * int[] frame = new int[800 * 800];
+ * mandelCalc.calcMandelbrotSet(frame, 0, 800, 800, 800, MandelbrotCalculator.INITIAL_MIN_REAL, MandelbrotCalculator.INITIAL_MAX_REAL, MandelbrotCalculator.INITIAL_MIN_IMAGINARY, MandelbrotCalculator.INITIAL_MAX_IMAGINARY, MandelbrotCalculator.INITIAL_MAX_ITERATIONS, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+ *
+ * Views with large areas inside the set render much faster with the Mariani-Silver strategy, which only iterates the borders of rectangles
+ * and fills rectangles whose border has a single iteration value without iterating their interior. This is an approximation: a feature thinner than
+ * the subdivision grid that does not touch a border can be missed.
+ *
+ * mandelCalc.setStrategy(MandelbrotCalculator.Strategy.MARIANI_SILVER);
+ *
+ * Points inside the set always run to maxIterations. Two optional shortcuts resolve them early without changing the result: an analytic test for the
+ * main cardioid and the period-2 bulb, and Brent-style detection of orbits that have become exactly cyclic. The number of pixels each shortcut resolved
+ * is available from getCardioidResolvedCount and getPeriodicityResolvedCount.
+ *
+ * mandelCalc.setCardioidCheck(true);
+ * mandelCalc.setPeriodicityCheck(true);
+ *
+ * Views deeper than double precision can resolve (pixel spacing below roughly 1e-14) can be rendered by passing the bounds as BigDecimal values.
+ * These are rendered by perturbation from a single high precision reference orbit, see MandelbrotDeepZoom.
+ *
+ * To find out why a frame was slow, enable render metrics. Each render then produces a MandelbrotRenderMetrics with its wall time, iteration and
+ * escape counts and a tile timing histogram, and commits mandelbrot.Frame and mandelbrot.Tile events to any running Flight Recorder recording.
+ * The cost is one timer read per tile and one pass over each calculated row, so metrics can be left enabled.
+ *
+ * mandelCalc.setMetricsEnabled(true);
+ * mandelCalc.setMetricsListener(metrics -> System.out.println(metrics));
+ *
+ * The precision of the kernel can be selected. FLOAT is enough for thumbnails and shallow views and iterates twice as many pixels per SIMD vector,
+ * DOUBLE_DOUBLE carries about 32 significant digits and reaches pixel spacings around 1e-28 without arbitrary precision arithmetic, and AUTO picks the
+ * cheapest precision that resolves the view's pixel spacing. With AUTO or DOUBLE_DOUBLE, BigDecimal bounds are rendered with doubles or double-doubles
+ * when they are precise enough and only fall back to perturbation beyond that.
+ *
+ * mandelCalc.setPrecision(MandelbrotCalculator.Precision.AUTO);
+ *
+ * Other escape-time fractals, such as Julia sets, Multibrot sets and the Burning Ship, are rendered by setting a FractalKernel. The frame is then
+ * calculated with the same tiling, parallelism and strategy settings, and the result is read in the same way.
+ *
+ * mandelCalc.setKernel(FractalKernel.julia(-0.8, 0.156));
+ *
  * @author jon.lewis@st-andrews.ac.uk
  *
  */
@@ -52,6 +111,66 @@ public class MandelbrotCalculator {
 
     // Default parameter values
     protected static final double DEFAULT_RADIUS_SQUARED = 4.0;
+    protected static final int DEFAULT_TILE_SIZE = 64;
+
+    /**
+     * The kernels available to iterate rows of pixels.
+     * SCALAR iterates one pixel at a time, VECTOR iterates a SIMD vector of adjacent pixels using the Vector API.
+     */
+    public enum Backend { SCALAR, VECTOR }
+
+    /**
+     * The strategies for visiting the pixels of a tile.
+     * PER_PIXEL iterates every pixel, MARIANI_SILVER iterates rectangle borders and fills rectangles with a uniform border without iterating them.
+     */
+    public enum Strategy { PER_PIXEL, MARIANI_SILVER }
+
+    /**
+     * The arithmetic used to iterate pixels.
+     * FLOAT iterates in single precision, DOUBLE (the default) in double precision and DOUBLE_DOUBLE in unevaluated sums of two doubles.
+     * AUTO selects the cheapest of these whose precision resolves the pixel spacing, see selectPrecision.
+     */
+    public enum Precision { FLOAT, DOUBLE, DOUBLE_DOUBLE, AUTO }
+
+    // Rectangles with a side of at most this many pixels are iterated pixel by pixel rather than subdivided further
+    private static final int MIN_SUBDIVISION_SIZE = 6;
+
+    // The vector kernel, or null if the Vector API or the kernel class is not available
+    private static final MandelbrotRowKernel VECTOR_KERNEL = loadVectorKernel();
+    private static final boolean VECTOR_API_AVAILABLE = VECTOR_KERNEL != null;
+
+    // Smallest pixel spacing each precision resolves with about 10 bits to spare, for Z and C of magnitude up to 2
+    private static final double FLOAT_MIN_SPACING = 0x1p-12;
+    private static final double DOUBLE_MIN_SPACING = 0x1p-41;
+    private static final double DOUBLE_DOUBLE_MIN_SPACING = 0x1p-94;
+
+    // The float vector kernel counts iterations in float lanes, which are exact up to 2^24
+    private static final int FLOAT_VECTOR_MAX_ITERATIONS = 1 << 24;
+
+    private static final double LN_2 = Math.log(2);
+
+    // Rendering settings
+    private Backend backend = Backend.SCALAR;
+    private Strategy strategy = Strategy.PER_PIXEL;
+    private Precision precision = Precision.DOUBLE;
+    private FractalKernel kernel;
+    private int parallelism = 1;
+    private int tileSize = DEFAULT_TILE_SIZE;
+    private boolean cardioidCheck = false;
+    private boolean periodicityCheck = false;
+    private ForkJoinPool pool;
+    private MandelbrotDeepZoom deepZoom;
+    private final ThreadLocal<int[]> tileScratch = new ThreadLocal<>();
+
+    // Number of pixels resolved by each interior shortcut
+    private final LongAdder cardioidResolved = new LongAdder();
+    private final LongAdder periodicityResolved = new LongAdder();
+
+    // Render metrics
+    private boolean metricsEnabled = false;
+    private volatile MandelbrotRenderMetrics lastMetrics;
+    private volatile Consumer<MandelbrotRenderMetrics> metricsListener;
+    private final ThreadLocal<MandelbrotRenderMetrics.TileCounters> tileCounters = ThreadLocal.withInitial(MandelbrotRenderMetrics.TileCounters::new);
 
 
 
@@ -67,6 +186,13 @@ public class MandelbrotCalculator {
      * @return the number iterations for the value of Z to grow outside of the bounding radius, or maxIterations if it never escaped.
      */
     private int calcMandel(double cReal, double cImaginary, int maxIterations, double radiusSquared){
+        if (cardioidCheck && isInCardioidOrBulb(cReal, cImaginary)) {
+            cardioidResolved.increment();
+            return maxIterations;
+        }
+        if (periodicityCheck) {
+            return calcMandelPeriodic(cReal, cImaginary, maxIterations, radiusSquared);
+        }
         // To work out Z_n+1 = Z_n^2 + C and establish whether C is in the Mandelbrot set or not
         // we need to
         //    square the current value of Z
@@ -94,10 +220,182 @@ public class MandelbrotCalculator {
         return iterations;
     }
 
+    /**
+     * Version of calcMandel which also checks whether the orbit of Z has become cyclic, using Brent's algorithm: Z is saved after 1, 2, 4, 8, ... iterations
+     * and compared against every following value until the next save. If Z returns exactly to a saved value then every value of the cycle has already been
+     * checked against the radius, so Z can never escape and maxIterations is returned straight away.
+     */
+    private int calcMandelPeriodic(double cReal, double cImaginary, int maxIterations, double radiusSquared){
+        int iterations = 0;
+        double zr = 0;
+        double zi = 0;
+        double savedZr = 0;
+        double savedZi = 0;
+        int saveInterval = 1;
+        int sinceSave = 0;
+        while (iterations < maxIterations) {
+            double zr2 = zr * zr;
+            double zi2 = zi * zi;
+            double nzr = zr2 - zi2 + cReal;
+            double nzi = 2 * zr * zi + cImaginary;
+            zr = nzr;
+            zi = nzi;
+            iterations++;
+            if ((zr2 + zi2) > radiusSquared)
+                return iterations;
+            if (zr == savedZr && zi == savedZi) {
+                periodicityResolved.increment();
+                return maxIterations;
+            }
+            if (++sinceSave == saveInterval) {
+                savedZr = zr;
+                savedZi = zi;
+                saveInterval <<= 1;
+                sinceSave = 0;
+            }
+        }
+        return iterations;
+    }
+
+    /**
+     * Version of calcMandel in single precision. C and the radius are rounded to float, so results differ from calcMandel near the boundary of the set.
+     */
+    private int calcMandelFloat(float cReal, float cImaginary, int maxIterations, float radiusSquared){
+        if (cardioidCheck && isInCardioidOrBulb(cReal, cImaginary)) {
+            cardioidResolved.increment();
+            return maxIterations;
+        }
+        int iterations = 0;
+        float zr = 0;
+        float zi = 0;
+        boolean outside = false;
+        while (iterations < maxIterations && !outside) {
+            float zr2 = zr * zr;
+            float zi2 = zi * zi;
+            float nzr = zr2 - zi2 + cReal;
+            float nzi = 2 * zr * zi + cImaginary;
+            zr = nzr;
+            zi = nzi;
+            if ((zr2 + zi2) > radiusSquared)
+                outside = true;
+            iterations++;
+        }
+        return iterations;
+    }
+
+    /**
+     * Version of calcMandel in double-double arithmetic, where each number is the unevaluated sum of a high and a low double, giving about 106 significant bits.
+     * C is given as (cRealHigh + cRealLow) + i * (cImaginaryHigh + cImaginaryLow). The escape test uses the high parts only, which is exact enough
+     * to compare against the radius.
+     */
+    private int calcMandelDoubleDouble(double cRealHigh, double cRealLow, double cImaginaryHigh, double cImaginaryLow, int maxIterations, double radiusSquared){
+        if (cardioidCheck && isInCardioidOrBulb(cRealHigh, cImaginaryHigh)) {
+            cardioidResolved.increment();
+            return maxIterations;
+        }
+        int iterations = 0;
+        double zrh = 0;
+        double zrl = 0;
+        double zih = 0;
+        double zil = 0;
+        while (iterations < maxIterations) {
+            // zr^2, zi^2 and zr*zi, with the rounding error of the high product recovered exactly by fma
+            double zr2h = zrh * zrh;
+            double zr2l = Math.fma(zrh, zrh, -zr2h) + 2 * zrh * zrl;
+            double zi2h = zih * zih;
+            double zi2l = Math.fma(zih, zih, -zi2h) + 2 * zih * zil;
+            double pzh = zrh * zih;
+            double pzl = Math.fma(zrh, zih, -pzh) + zrh * zil + zrl * zih;
+            iterations++;
+            if ((zr2h + zi2h) > radiusSquared)
+                break;
+
+            // zr = (zr^2 - zi^2) + cr, each sum using Knuth's two-sum for the high parts
+            double s = zr2h - zi2h;
+            double b = s - zr2h;
+            double e = (zr2h - (s - b)) + (-zi2h - b) + (zr2l - zi2l);
+            double t = s + cRealHigh;
+            b = t - s;
+            e = (s - (t - b)) + (cRealHigh - b) + e + cRealLow;
+            zrh = t + e;
+            zrl = e - (zrh - t);
+
+            // zi = 2 * zr * zi + ci
+            s = 2 * pzh;
+            t = s + cImaginaryHigh;
+            b = t - s;
+            e = (s - (t - b)) + (cImaginaryHigh - b) + 2 * pzl + cImaginaryLow;
+            zih = t + e;
+            zil = e - (zih - t);
+        }
+        return iterations;
+    }
+
+    /**
+     * Version of calcMandel which returns a continuous (normalised) iteration count for smooth colouring. If Z escapes with |Z|^2 = m after n iterations,
+     * the result is n + 1 - log2(ln m / ln radiusSquared), which lies in [n, n + 1) and varies continuously across the bands where n changes.
+     * Points which never escape return exactly maxIterations.
+     * @return the normalised iteration count, or maxIterations if Z never escaped.
+     */
+    protected double calcMandelSmooth(double cReal, double cImaginary, int maxIterations, double radiusSquared){
+        if (cardioidCheck && isInCardioidOrBulb(cReal, cImaginary)) {
+            cardioidResolved.increment();
+            return maxIterations;
+        }
+        int iterations = 0;
+        double zr = 0;
+        double zi = 0;
+        while (iterations < maxIterations) {
+            double zr2 = zr * zr;
+            double zi2 = zi * zi;
+            iterations++;
+            if ((zr2 + zi2) > radiusSquared) {
+                double smooth = iterations + 1 - Math.log(Math.log(zr2 + zi2) / Math.log(radiusSquared)) / LN_2;
+                return Math.max(iterations, Math.min(smooth, Math.nextDown(iterations + 1.0)));
+            }
+            double nzi = 2 * zr * zi + cImaginary;
+            zr = zr2 - zi2 + cReal;
+            zi = nzi;
+        }
+        return iterations;
+    }
+
+    /**
+     * Tests whether C lies in the main cardioid or the period-2 bulb of the Mandelbrot set. Such points never escape.
+     * @param cReal the real component of C.
+     * @param cImaginary the imaginary component of C.
+     * @return true if C is inside the main cardioid or the period-2 bulb.
+     */
+    protected static boolean isInCardioidOrBulb(double cReal, double cImaginary) {
+        double ci2 = cImaginary * cImaginary;
+        double xq = cReal - 0.25;
+        double q = xq * xq + ci2;
+        if (q * (q + xq) <= 0.25 * ci2) {
+            return true;
+        }
+        double xb = cReal + 1.0;
+        return xb * xb + ci2 <= 0.0625;
+    }
+
+    /**
+     * Single precision version of isInCardioidOrBulb, used by the float kernels.
+     */
+    protected static boolean isInCardioidOrBulb(float cReal, float cImaginary) {
+        float ci2 = cImaginary * cImaginary;
+        float xq = cReal - 0.25f;
+        float q = xq * xq + ci2;
+        if (q * (q + xq) <= 0.25f * ci2) {
+            return true;
+        }
+        float xb = cReal + 1.0f;
+        return xb * xb + ci2 <= 0.0625f;
+    }
+
 
 
     /**
      * Method to calculate the Mandelbrot set for the given parameter settings.
+     * The frame is rendered tile by tile; if the parallelism level is greater than one the tiles are rendered on a fork-join pool.
      * @param xResolution the number of pixels on the x-axis in your GUI display.
      * @param yResolution the number of pixels on the y-axis in your GUI display.
      * @param minReal the lower real bound for the complex constant C (equivalent to lower bound X value in Mandelbrot set)
@@ -109,21 +407,808 @@ public class MandelbrotCalculator {
      */
     public int[][] calcMandelbrotSet(int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared){
         int[][] mandelbrotData = new int[yResolution][xResolution];
-        double realRange = maxReal - minReal;
 
         double realStep = (maxReal - minReal)/xResolution;
         double imaginaryStep = (maxImaginary - minImaginary)/yResolution;
 
+        forEachTile(xResolution, yResolution, (x0, y0, width, height) -> {
+            if (strategy == Strategy.PER_PIXEL) {
+                for (int y = y0; y < y0 + height; y++) {
+                    calcLatticeRow(mandelbrotData[y], x0, x0, y, width, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+                }
+            } else {
+                int[] scratch = tileScratch(width * height);
+                renderTile(scratch, 0, width, x0, y0, width, height, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+                for (int y = 0; y < height; y++) {
+                    System.arraycopy(scratch, y * width, mandelbrotData[y0 + y], x0, width);
+                }
+            }
+        });
+        return mandelbrotData;
+    }
+
 
-        for (int y = 0; y < yResolution; y++) {
-            double cImaginary = minImaginary + y * imaginaryStep;
-            for (int x = 0; x < xResolution; x++) {
-                double cReal = minReal + x * realStep;
-                mandelbrotData[y][x] = calcMandel(cReal, cImaginary, maxIterations, radiusSquared);
-                cReal = cReal + realStep;
+
+    /**
+     * Method to calculate the Mandelbrot set for bounds given with arbitrary precision, for zooms too deep for calcMandelbrotSet with double bounds.
+     * The frame is rendered by perturbation from a high precision reference orbit at its centre, see MandelbrotDeepZoom. If the precision is AUTO,
+     * views whose pixel spacing double or double-double arithmetic can resolve are rendered directly instead; if it is DOUBLE_DOUBLE the frame is
+     * always rendered in double-double arithmetic.
+     * @param xResolution the number of pixels on the x-axis in your GUI display.
+     * @param yResolution the number of pixels on the y-axis in your GUI display.
+     * @param minReal the lower real bound for the complex constant C (equivalent to lower bound X value in Mandelbrot set)
+     * @param maxReal the upper real bound for the complex constant C (equivalent to upper bound X value in Mandelbrot set)
+     * @param minImaginary the lower imaginary bound for the complex constant C (equivalent to lower bound Y value in Mandelbrot set)
+     * @param maxImaginary the upper imaginary bound for the complex constant C (equivalent to upper bound Y value in Mandelbrot set)
+     * @param maxIterations the maximum number of iterations to iterate the complex formula
+     * @param radiusSquared the squared of the radius to use when determining whether Z escaped the circle in the complex plain or remained bounded.
+     * @return the 2-D integer array mandelbrotData[yResolution][xResolution] containing the for each [y][x] pixel the number of iterations needed until Z escaped the bounding radius, or maxIterations otherwise.
+     */
+    public int[][] calcMandelbrotSet(int xResolution, int yResolution, BigDecimal minReal, BigDecimal maxReal, BigDecimal minImaginary, BigDecimal maxImaginary, int maxIterations, double radiusSquared){
+        double realStep = maxReal.subtract(minReal).doubleValue() / xResolution;
+        double imaginaryStep = maxImaginary.subtract(minImaginary).doubleValue() / yResolution;
+        boolean doubleDouble = precision == Precision.DOUBLE_DOUBLE;
+        if (precision == Precision.AUTO || kernel != null) {
+            if (selectPrecision(realStep) != Precision.DOUBLE_DOUBLE || kernel != null) {
+                return calcMandelbrotSet(xResolution, yResolution, minReal.doubleValue(), maxReal.doubleValue(), minImaginary.doubleValue(), maxImaginary.doubleValue(), maxIterations, radiusSquared);
             }
+            doubleDouble = Math.abs(realStep) >= DOUBLE_DOUBLE_MIN_SPACING;
+        }
+        if (!doubleDouble) {
+            return getDeepZoom().calcMandelbrotSet(xResolution, yResolution, minReal, maxReal, minImaginary, maxImaginary, maxIterations, radiusSquared);
         }
+
+        // Split each lower bound into the nearest double and the remainder
+        double minRealHigh = minReal.doubleValue();
+        double minRealLow = minReal.subtract(new BigDecimal(minRealHigh)).doubleValue();
+        double minImaginaryHigh = minImaginary.doubleValue();
+        double minImaginaryLow = minImaginary.subtract(new BigDecimal(minImaginaryHigh)).doubleValue();
+        int[][] mandelbrotData = new int[yResolution][xResolution];
+        forEachTile(xResolution, yResolution, (x0, y0, width, height) -> {
+            for (int y = y0; y < y0 + height; y++) {
+                calcRowDoubleDouble(mandelbrotData[y], x0, x0, 1, y, width, minRealHigh, minRealLow, realStep, minImaginaryHigh, minImaginaryLow, imaginaryStep, maxIterations, radiusSquared);
+            }
+        });
         return mandelbrotData;
     }
-}
 
+    /**
+     * Returns the deep zoom renderer used for BigDecimal bounds, for example to configure the series approximation or read its glitch counts.
+     * @return the deep zoom renderer, which renders with this calculator's tiling settings.
+     */
+    public synchronized MandelbrotDeepZoom getDeepZoom() {
+        if (deepZoom == null) {
+            deepZoom = new MandelbrotDeepZoom(this);
+        }
+        return deepZoom;
+    }
+
+
+
+    /**
+     * Method to calculate the Mandelbrot set into a caller-supplied flat buffer, so that the same buffer can be reused across frames.
+     * The value for pixel [y][x] is written to out[offset + y * stride + x].
+     * @param out the buffer to write the iteration values to.
+     * @param offset the index in out of pixel [0][0].
+     * @param stride the distance in out between the starts of two adjacent rows, at least xResolution.
+     * @param xResolution the number of pixels on the x-axis in your GUI display.
+     * @param yResolution the number of pixels on the y-axis in your GUI display.
+     * @param minReal the lower real bound for the complex constant C (equivalent to lower bound X value in Mandelbrot set)
+     * @param maxReal the upper real bound for the complex constant C (equivalent to upper bound X value in Mandelbrot set)
+     * @param minImaginary the lower imaginary bound for the complex constant C (equivalent to lower bound Y value in Mandelbrot set)
+     * @param maxImaginary the upper imaginary bound for the complex constant C (equivalent to upper bound Y value in Mandelbrot set)
+     * @param maxIterations the maximum number of iterations to iterate the complex formula
+     * @param radiusSquared the squared of the radius to use when determining whether Z escaped the circle in the complex plain or remained bounded.
+     */
+    public void calcMandelbrotSet(int[] out, int offset, int stride, int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared){
+        calcMandelbrotRegion(out, offset, stride, 0, 0, xResolution, yResolution, xResolution, yResolution, minReal, maxReal, minImaginary, maxImaginary, maxIterations, radiusSquared);
+    }
+
+    /**
+     * Method to calculate a sub-rectangle of a frame into a caller-supplied flat buffer.
+     * The pixels are the same as those calcMandelbrotSet would produce for the whole xResolution x yResolution frame; pixel [regionY + ry][regionX + rx] is written to out[offset + ry * stride + rx].
+     * @param out the buffer to write the iteration values to.
+     * @param offset the index in out of the top left pixel of the region.
+     * @param stride the distance in out between the starts of two adjacent rows, at least regionWidth.
+     * @param regionX the x coordinate in the frame of the left edge of the region.
+     * @param regionY the y coordinate in the frame of the top edge of the region.
+     * @param regionWidth the width of the region in pixels.
+     * @param regionHeight the height of the region in pixels.
+     * @param xResolution the number of pixels on the x-axis of the whole frame.
+     * @param yResolution the number of pixels on the y-axis of the whole frame.
+     * @param minReal the lower real bound for the complex constant C (equivalent to lower bound X value in Mandelbrot set)
+     * @param maxReal the upper real bound for the complex constant C (equivalent to upper bound X value in Mandelbrot set)
+     * @param minImaginary the lower imaginary bound for the complex constant C (equivalent to lower bound Y value in Mandelbrot set)
+     * @param maxImaginary the upper imaginary bound for the complex constant C (equivalent to upper bound Y value in Mandelbrot set)
+     * @param maxIterations the maximum number of iterations to iterate the complex formula
+     * @param radiusSquared the squared of the radius to use when determining whether Z escaped the circle in the complex plain or remained bounded.
+     */
+    public void calcMandelbrotRegion(int[] out, int offset, int stride, int regionX, int regionY, int regionWidth, int regionHeight, int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared){
+        checkRegion(out.length, offset, stride, regionX, regionY, regionWidth, regionHeight, xResolution, yResolution);
+        double realStep = (maxReal - minReal)/xResolution;
+        double imaginaryStep = (maxImaginary - minImaginary)/yResolution;
+        calcRegion(out, offset, stride, regionX, regionY, regionWidth, regionHeight, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+    }
+
+    /**
+     * Method to calculate a sub-rectangle of a frame into an IntBuffer, for example a direct buffer shared with native code.
+     * Indexing is absolute and the buffer's position is left unchanged; pixel [regionY + ry][regionX + rx] is written at index offset + ry * stride + rx.
+     * See calcMandelbrotRegion(int[], ...) for the other parameters.
+     * @param out the buffer to write the iteration values to.
+     */
+    public void calcMandelbrotRegion(IntBuffer out, int offset, int stride, int regionX, int regionY, int regionWidth, int regionHeight, int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared){
+        if (out.hasArray()) {
+            calcMandelbrotRegion(out.array(), out.arrayOffset() + offset, stride, regionX, regionY, regionWidth, regionHeight, xResolution, yResolution, minReal, maxReal, minImaginary, maxImaginary, maxIterations, radiusSquared);
+            return;
+        }
+        checkRegion(out.limit(), offset, stride, regionX, regionY, regionWidth, regionHeight, xResolution, yResolution);
+        double realStep = (maxReal - minReal)/xResolution;
+        double imaginaryStep = (maxImaginary - minImaginary)/yResolution;
+
+        forEachTile(regionWidth, regionHeight, (x0, y0, width, height) -> {
+            int[] scratch = tileScratch(width * height);
+            renderTile(scratch, 0, width, regionX + x0, regionY + y0, width, height, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+            for (int y = 0; y < height; y++) {
+                out.put(offset + (y0 + y) * stride + x0, scratch, y * width, width);
+            }
+        });
+    }
+
+    /**
+     * Method which calculates a rectangle of pixels into a flat buffer, given the position of pixel x = 0, y = 0 and the step between pixels.
+     * Pixel (x, y) has C = (minReal + x * realStep) + i * (minImaginary + y * imaginaryStep) and its value is written to out[offset + (y - y0) * stride + (x - x0)].
+     * The rectangle is rendered tile by tile using the current parallelism level, backend and strategy; nothing is allocated per pixel or per row.
+     * @param out the buffer to write the iteration values to.
+     * @param offset the index in out of pixel (x0, y0).
+     * @param stride the distance in out between the starts of two adjacent rows.
+     * @param x0 the x coordinate of the left edge of the rectangle.
+     * @param y0 the y coordinate of the top edge of the rectangle.
+     * @param width the width of the rectangle in pixels.
+     * @param height the height of the rectangle in pixels.
+     * @param minReal the real component of pixel x = 0.
+     * @param realStep the distance between adjacent pixels on the real axis.
+     * @param minImaginary the imaginary component of pixel y = 0.
+     * @param imaginaryStep the distance between adjacent pixels on the imaginary axis.
+     * @param maxIterations the maximum number of iterations to iterate the complex formula
+     * @param radiusSquared the squared of the radius to use when determining whether Z escaped the circle in the complex plain or remained bounded.
+     */
+    protected void calcRegion(int[] out, int offset, int stride, int x0, int y0, int width, int height, double minReal, double realStep, double minImaginary, double imaginaryStep, int maxIterations, double radiusSquared) {
+        forEachTile(width, height, (tx, ty, tileWidth, tileHeight) ->
+                renderTile(out, offset + ty * stride + tx, stride, x0 + tx, y0 + ty, tileWidth, tileHeight, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared));
+    }
+
+    /**
+     * Method which calculates one tile into a flat buffer using the selected strategy, on the calling thread. Arguments are as for calcRegion, with (x0, y0) written to out[offset].
+     */
+    protected void renderTile(int[] out, int offset, int stride, int x0, int y0, int width, int height, double minReal, double realStep, double minImaginary, double imaginaryStep, int maxIterations, double radiusSquared) {
+        if (strategy == Strategy.MARIANI_SILVER && width > 2 && height > 2) {
+            // Iterate the tile's border, then let subdivide work inwards
+            calcRect(out, offset, stride, x0, y0, 0, 0, width, 1, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+            calcRect(out, offset, stride, x0, y0, 0, height - 1, width, 1, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+            calcRect(out, offset, stride, x0, y0, 0, 1, 1, height - 2, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+            calcRect(out, offset, stride, x0, y0, width - 1, 1, 1, height - 2, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+            subdivide(out, offset, stride, x0, y0, 0, 0, width, height, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+        } else {
+            calcRect(out, offset, stride, x0, y0, 0, 0, width, height, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+        }
+    }
+
+    /**
+     * Mariani-Silver subdivision of the rectangle at (rx, ry) relative to the tile whose pixel (x0, y0) is stored at out[offset].
+     * The border of the rectangle must already be calculated. If every border pixel has the same value the interior is filled with it,
+     * otherwise the rectangle is split in two along its longer side, the dividing line is calculated and both halves are subdivided in turn.
+     */
+    private void subdivide(int[] out, int offset, int stride, int x0, int y0, int rx, int ry, int width, int height, double minReal, double realStep, double minImaginary, double imaginaryStep, int maxIterations, double radiusSquared) {
+        if (width <= 2 || height <= 2) {
+            return;
+        }
+        int top = offset + ry * stride + rx;
+        int bottom = top + (height - 1) * stride;
+        int value = out[top];
+        boolean uniform = true;
+        for (int i = 0; i < width && uniform; i++) {
+            uniform = out[top + i] == value && out[bottom + i] == value;
+        }
+        for (int i = 1; i < height - 1 && uniform; i++) {
+            uniform = out[top + i * stride] == value && out[top + i * stride + width - 1] == value;
+        }
+
+        if (uniform) {
+            for (int y = 1; y < height - 1; y++) {
+                Arrays.fill(out, top + y * stride + 1, top + y * stride + width - 1, value);
+            }
+            if (metricsEnabled) {
+                MandelbrotRenderMetrics.TileCounters counters = tileCounters.get();
+                if (counters.active) {
+                    counters.addFill((long) (width - 2) * (height - 2), value, maxIterations);
+                }
+            }
+        } else if (width <= MIN_SUBDIVISION_SIZE || height <= MIN_SUBDIVISION_SIZE) {
+            calcRect(out, offset, stride, x0, y0, rx + 1, ry + 1, width - 2, height - 2, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+        } else if (width >= height) {
+            int split = width / 2;
+            calcRect(out, offset, stride, x0, y0, rx + split, ry + 1, 1, height - 2, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+            subdivide(out, offset, stride, x0, y0, rx, ry, split + 1, height, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+            subdivide(out, offset, stride, x0, y0, rx + split, ry, width - split, height, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+        } else {
+            int split = height / 2;
+            calcRect(out, offset, stride, x0, y0, rx + 1, ry + split, width - 2, 1, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+            subdivide(out, offset, stride, x0, y0, rx, ry, width, split + 1, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+            subdivide(out, offset, stride, x0, y0, rx, ry + split, width, height - split, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+        }
+    }
+
+    /**
+     * Calculates every pixel of the rectangle at (rx, ry) relative to the tile whose pixel (x0, y0) is stored at out[offset].
+     */
+    private void calcRect(int[] out, int offset, int stride, int x0, int y0, int rx, int ry, int width, int height, double minReal, double realStep, double minImaginary, double imaginaryStep, int maxIterations, double radiusSquared) {
+        for (int y = ry; y < ry + height; y++) {
+            calcLatticeRow(out, offset + y * stride + rx, x0 + rx, y0 + y, width, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+        }
+    }
+
+    private static void checkRegion(int capacity, int offset, int stride, int regionX, int regionY, int regionWidth, int regionHeight, int xResolution, int yResolution) {
+        if (regionWidth < 0 || regionHeight < 0 || regionX < 0 || regionY < 0
+                || regionX + regionWidth > xResolution || regionY + regionHeight > yResolution) {
+            throw new IllegalArgumentException("Region " + regionWidth + "x" + regionHeight + " at (" + regionX + ", " + regionY
+                    + ") does not fit in a " + xResolution + "x" + yResolution + " frame");
+        }
+        if (stride < regionWidth) {
+            throw new IllegalArgumentException("Stride " + stride + " is smaller than the region width " + regionWidth);
+        }
+        if (regionWidth > 0 && regionHeight > 0
+                && (offset < 0 || offset + (long) (regionHeight - 1) * stride + regionWidth > capacity)) {
+            throw new IndexOutOfBoundsException("Region does not fit in a buffer of " + capacity + " ints at offset " + offset);
+        }
+    }
+
+    /**
+     * Returns a per-thread array of at least the given length, reused between calls so that rendering a tile into scratch space does not allocate per tile.
+     */
+    private int[] tileScratch(int length) {
+        int[] scratch = tileScratch.get();
+        if (scratch == null || scratch.length < length) {
+            scratch = new int[Math.max(length, tileSize * tileSize)];
+            tileScratch.set(scratch);
+        }
+        return scratch;
+    }
+
+
+
+    /**
+     * Method which calculates the iteration values for a run of adjacent pixels on one row, using the selected backend and precision.
+     * Pixel x has the real component minReal + x * realStep, exactly as in calcMandelbrotSet. In DOUBLE_DOUBLE precision cImaginary is taken as exact,
+     * so callers that can should use calcLatticeRow, which also forms the imaginary component in double-double arithmetic.
+     * @param out the array to write the iteration values to.
+     * @param offset the index in out at which the value for pixel x0 is written.
+     * @param x0 the x coordinate of the first pixel.
+     * @param count the number of pixels to calculate.
+     * @param minReal the real component of pixel x = 0.
+     * @param realStep the distance between adjacent pixels on the real axis.
+     * @param cImaginary the imaginary component shared by every pixel on the row.
+     * @param maxIterations the maximum number of iterations to iterate the complex formula
+     * @param radiusSquared the squared of the radius to use when determining whether Z escaped the circle in the complex plain or remained bounded.
+     */
+    protected void calcRow(int[] out, int offset, int x0, int count, double minReal, double realStep, double cImaginary, int maxIterations, double radiusSquared) {
+        calcRow(out, offset, x0, 1, count, minReal, realStep, cImaginary, maxIterations, radiusSquared);
+    }
+
+    /**
+     * Version of calcRow which calculates every xStep-th pixel of a row, for example to sample a frame coarsely: the value for pixel x0 + i * xStep is
+     * written to out[offset + i]. Each pixel has exactly the C it has in the full frame, and the AUTO precision is selected from the frame's realStep.
+     * @param xStep the distance in pixels between consecutive calculated pixels, at least 1.
+     */
+    protected void calcRow(int[] out, int offset, int x0, int xStep, int count, double minReal, double realStep, double cImaginary, int maxIterations, double radiusSquared) {
+        FractalKernel rowKernel = kernel;
+        if (rowKernel != null) {
+            rowKernel.calcRow(out, offset, x0, xStep, count, minReal, realStep, cImaginary, maxIterations, radiusSquared);
+            countRow(out, offset, count, maxIterations);
+            return;
+        }
+        Precision rowPrecision = precision == Precision.AUTO ? selectPrecision(realStep) : precision;
+        // A single pixel is cheaper on the scalar kernel, which gives the same result
+        boolean vector = backend == Backend.VECTOR && VECTOR_API_AVAILABLE && count > 1;
+        if (rowPrecision == Precision.DOUBLE_DOUBLE) {
+            calcRowDoubleDouble(out, offset, x0, xStep, 0, count, minReal, 0, realStep, cImaginary, 0, 0, maxIterations, radiusSquared);
+            return;
+        } else if (rowPrecision == Precision.FLOAT && vector && maxIterations <= FLOAT_VECTOR_MAX_ITERATIONS) {
+            int resolved = VECTOR_KERNEL.calcRowFloat(out, offset, x0, xStep, count, minReal, realStep, cImaginary, maxIterations, radiusSquared, cardioidCheck);
+            if (resolved > 0) {
+                cardioidResolved.add(resolved);
+            }
+        } else if (rowPrecision == Precision.FLOAT) {
+            float floatMinReal = (float) minReal;
+            float floatRealStep = (float) realStep;
+            for (int i = 0; i < count; i++) {
+                float cReal = (x0 + i * xStep) * floatRealStep + floatMinReal;
+                out[offset + i] = calcMandelFloat(cReal, (float) cImaginary, maxIterations, (float) radiusSquared);
+            }
+        } else if (vector) {
+            int resolved = VECTOR_KERNEL.calcRow(out, offset, x0, xStep, count, minReal, realStep, cImaginary, maxIterations, radiusSquared, cardioidCheck);
+            if (resolved > 0) {
+                cardioidResolved.add(resolved);
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                double cReal = minReal + (x0 + i * xStep) * realStep;
+                out[offset + i] = calcMandel(cReal, cImaginary, maxIterations, radiusSquared);
+            }
+        }
+        countRow(out, offset, count, maxIterations);
+    }
+
+    /**
+     * Method which calculates the iteration values for a run of adjacent pixels on row y of a lattice, i.e. with cImaginary = minImaginary + y * imaginaryStep.
+     * In DOUBLE_DOUBLE precision both components of C are formed in double-double arithmetic, otherwise this is the same as calcRow.
+     */
+    private void calcLatticeRow(int[] out, int offset, int x0, int y, int count, double minReal, double realStep, double minImaginary, double imaginaryStep, int maxIterations, double radiusSquared) {
+        calcLatticeRow(out, offset, x0, 1, y, count, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+    }
+
+    /**
+     * Version of calcLatticeRow which calculates every xStep-th pixel of the row, as the strided calcRow does. Each pixel has exactly the C it has
+     * in the full frame in every precision, including DOUBLE_DOUBLE.
+     * @param xStep the distance in pixels between consecutive calculated pixels, at least 1.
+     */
+    protected void calcLatticeRow(int[] out, int offset, int x0, int xStep, int y, int count, double minReal, double realStep, double minImaginary, double imaginaryStep, int maxIterations, double radiusSquared) {
+        Precision rowPrecision = precision == Precision.AUTO ? selectPrecision(realStep) : precision;
+        if (rowPrecision == Precision.DOUBLE_DOUBLE && kernel == null) {
+            calcRowDoubleDouble(out, offset, x0, xStep, y, count, minReal, 0, realStep, minImaginary, 0, imaginaryStep, maxIterations, radiusSquared);
+        } else {
+            calcRow(out, offset, x0, xStep, count, minReal, realStep, minImaginary + y * imaginaryStep, maxIterations, radiusSquared);
+        }
+    }
+
+    /**
+     * Method which calculates every xStep-th pixel from x0 on row y in double-double arithmetic. The lower bounds are given as high and low parts and pixel (x, y)
+     * has C = (minRealHigh + minRealLow + x * realStep) + i * (minImaginaryHigh + minImaginaryLow + y * imaginaryStep), evaluated in double-double.
+     */
+    private void calcRowDoubleDouble(int[] out, int offset, int x0, int xStep, int y, int count, double minRealHigh, double minRealLow, double realStep, double minImaginaryHigh, double minImaginaryLow, double imaginaryStep, int maxIterations, double radiusSquared) {
+        double p = y * imaginaryStep;
+        double t = minImaginaryHigh + p;
+        double b = t - minImaginaryHigh;
+        double e = (minImaginaryHigh - (t - b)) + (p - b) + Math.fma(y, imaginaryStep, -p) + minImaginaryLow;
+        double cImaginaryHigh = t + e;
+        double cImaginaryLow = e - (cImaginaryHigh - t);
+        for (int i = 0; i < count; i++) {
+            int x = x0 + i * xStep;
+            p = x * realStep;
+            t = minRealHigh + p;
+            b = t - minRealHigh;
+            e = (minRealHigh - (t - b)) + (p - b) + Math.fma(x, realStep, -p) + minRealLow;
+            double cRealHigh = t + e;
+            double cRealLow = e - (cRealHigh - t);
+            out[offset + i] = calcMandelDoubleDouble(cRealHigh, cRealLow, cImaginaryHigh, cImaginaryLow, maxIterations, radiusSquared);
+        }
+        countRow(out, offset, count, maxIterations);
+    }
+
+    /**
+     * Adds a calculated row to the current tile's metrics, if metrics are enabled.
+     */
+    private void countRow(int[] out, int offset, int count, int maxIterations) {
+        if (metricsEnabled) {
+            MandelbrotRenderMetrics.TileCounters counters = tileCounters.get();
+            if (counters.active) {
+                counters.addRow(out, offset, count, maxIterations);
+            }
+        }
+    }
+
+
+
+    /**
+     * Selects the kernel used to iterate pixels. Selecting VECTOR when the Vector API is unavailable falls back to the scalar kernel.
+     * @param backend the backend to use.
+     */
+    public void setBackend(Backend backend) {
+        if (backend == null) {
+            throw new IllegalArgumentException("Backend cannot be null");
+        }
+        this.backend = backend;
+    }
+
+    /**
+     * @return the selected backend, which may not be the one in use if the Vector API is unavailable.
+     */
+    public Backend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Enables or disables the analytic main cardioid and period-2 bulb test, which returns maxIterations for such points without iterating them.
+     * @param cardioidCheck true to enable the test.
+     */
+    public void setCardioidCheck(boolean cardioidCheck) {
+        this.cardioidCheck = cardioidCheck;
+    }
+
+    /**
+     * @return true if the main cardioid and period-2 bulb test is enabled.
+     */
+    public boolean isCardioidCheck() {
+        return cardioidCheck;
+    }
+
+    /**
+     * Enables or disables orbit periodicity checking, which stops iterating a point once its orbit has become exactly cyclic.
+     * Periodicity checking applies to the scalar kernel; the vector kernel only supports the cardioid and bulb test.
+     * @param periodicityCheck true to enable periodicity checking.
+     */
+    public void setPeriodicityCheck(boolean periodicityCheck) {
+        this.periodicityCheck = periodicityCheck;
+    }
+
+    /**
+     * @return true if orbit periodicity checking is enabled.
+     */
+    public boolean isPeriodicityCheck() {
+        return periodicityCheck;
+    }
+
+    /**
+     * @return the number of pixels resolved by the main cardioid and period-2 bulb test since the counters were last reset.
+     */
+    public long getCardioidResolvedCount() {
+        return cardioidResolved.sum();
+    }
+
+    /**
+     * @return the number of pixels resolved by orbit periodicity checking since the counters were last reset.
+     */
+    public long getPeriodicityResolvedCount() {
+        return periodicityResolved.sum();
+    }
+
+    /**
+     * Resets the counts of pixels resolved by the interior shortcuts to zero.
+     */
+    public void resetInteriorCounts() {
+        cardioidResolved.reset();
+        periodicityResolved.reset();
+    }
+
+    /**
+     * Selects how the pixels of each tile are visited.
+     * @param strategy the strategy to use.
+     */
+    public void setStrategy(Strategy strategy) {
+        if (strategy == null) {
+            throw new IllegalArgumentException("Strategy cannot be null");
+        }
+        this.strategy = strategy;
+    }
+
+    /**
+     * @return the selected strategy.
+     */
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Selects the arithmetic used to iterate pixels.
+     * @param precision the precision to use.
+     */
+    public void setPrecision(Precision precision) {
+        if (precision == null) {
+            throw new IllegalArgumentException("Precision cannot be null");
+        }
+        this.precision = precision;
+    }
+
+    /**
+     * @return the selected precision, which may be AUTO.
+     */
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Selects the iteration used for every pixel, e.g. a Julia set or the Burning Ship. A kernel always iterates in scalar double precision,
+     * so the backend, precision and interior check settings are ignored while it is set, and BigDecimal bounds are rounded to double.
+     * @param kernel the kernel to use, or null for the built-in Mandelbrot kernels.
+     */
+    public void setKernel(FractalKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    /**
+     * @return the selected kernel, or null if the built-in Mandelbrot kernels are used.
+     */
+    public FractalKernel getKernel() {
+        return kernel;
+    }
+
+    /**
+     * Returns the precision AUTO uses for a given distance between adjacent pixels: the cheapest of FLOAT, DOUBLE and DOUBLE_DOUBLE whose rounding error
+     * near |C| = 2 is at least 2^10 times smaller than the spacing. Spacings too small even for DOUBLE_DOUBLE also return DOUBLE_DOUBLE.
+     * @param pixelSpacing the distance between adjacent pixels on the real axis.
+     * @return FLOAT, DOUBLE or DOUBLE_DOUBLE.
+     */
+    public static Precision selectPrecision(double pixelSpacing) {
+        double spacing = Math.abs(pixelSpacing);
+        if (spacing >= FLOAT_MIN_SPACING) {
+            return Precision.FLOAT;
+        } else if (spacing >= DOUBLE_MIN_SPACING) {
+            return Precision.DOUBLE;
+        }
+        return Precision.DOUBLE_DOUBLE;
+    }
+
+    /**
+     * @return true if the jdk.incubator.vector module is present and the vector kernel has been compiled, so the vector kernel can be used.
+     */
+    public static boolean isVectorApiAvailable() {
+        return VECTOR_API_AVAILABLE;
+    }
+
+    /**
+     * Loads MandelbrotVectorKernel by name, so that this class compiles and runs without the jdk.incubator.vector module.
+     */
+    private static MandelbrotRowKernel loadVectorKernel() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return (MandelbrotRowKernel) Class.forName("MandelbrotVectorKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Sets the number of threads used to render a frame. A value of 1 (the default) renders every tile on the calling thread.
+     * @param parallelism the number of worker threads to render tiles on, at least 1.
+     */
+    public synchronized void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        if (parallelism != this.parallelism && pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return the number of threads used to render a frame.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the edge length, in pixels, of the square tiles a frame is split into.
+     * Smaller tiles balance better across threads, larger tiles have less scheduling overhead.
+     * @param tileSize the tile edge length in pixels, at least 1.
+     */
+    public void setTileSize(int tileSize) {
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("Tile size must be at least 1: " + tileSize);
+        }
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * @return the edge length, in pixels, of the tiles a frame is split into.
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Enables or disables render metrics. While enabled every render records a MandelbrotRenderMetrics, available from getLastMetrics and passed to
+     * the metrics listener, and commits Flight Recorder events if a recording is running.
+     * @param metricsEnabled true to record render metrics.
+     */
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    /**
+     * @return true if render metrics are recorded.
+     */
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    /**
+     * Sets a listener called with the metrics of every render while metrics are enabled. It is called on the thread which started the render, after the render completes.
+     * @param metricsListener the listener, or null for none.
+     */
+    public void setMetricsListener(Consumer<MandelbrotRenderMetrics> metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * @return the metrics of the most recently completed render, or null if no render has completed with metrics enabled.
+     */
+    public MandelbrotRenderMetrics getLastMetrics() {
+        return lastMetrics;
+    }
+
+
+
+    /**
+     * Callback used to render one rectangular tile of a frame. Implementations must only write to pixels inside the given tile so that tiles may be rendered concurrently.
+     */
+    protected interface TileAction {
+        void render(int x0, int y0, int width, int height);
+    }
+
+    /**
+     * Splits a width x height frame into tiles of at most tileSize x tileSize pixels and calls the action once for each tile.
+     * With a parallelism level of 1 the tiles are visited in row order on the calling thread, otherwise they are rendered on the fork-join pool,
+     * where idle workers steal the remaining halves of expensive regions (for example tiles deep inside the set).
+     * @param width the width of the frame in pixels.
+     * @param height the height of the frame in pixels.
+     * @param action the action rendering a single tile.
+     */
+    protected void forEachTile(int width, int height, TileAction action) {
+        if (!metricsEnabled) {
+            visitTiles(width, height, action);
+            return;
+        }
+        MandelbrotFrameEvent frameEvent = new MandelbrotFrameEvent();
+        frameEvent.begin();
+        MandelbrotRenderMetrics.Recorder recorder = new MandelbrotRenderMetrics.Recorder(width, height, parallelism);
+        visitTiles(width, height, (x0, y0, tileWidth, tileHeight) -> {
+            MandelbrotTileEvent tileEvent = new MandelbrotTileEvent();
+            MandelbrotRenderMetrics.TileCounters counters = tileCounters.get();
+            counters.start();
+            tileEvent.begin();
+            long start = System.nanoTime();
+            try {
+                action.render(x0, y0, tileWidth, tileHeight);
+            } finally {
+                long nanos = System.nanoTime() - start;
+                tileEvent.end();
+                counters.active = false;
+                recorder.addTile(counters, nanos);
+                if (tileEvent.shouldCommit()) {
+                    tileEvent.x = x0;
+                    tileEvent.y = y0;
+                    tileEvent.width = tileWidth;
+                    tileEvent.height = tileHeight;
+                    tileEvent.calculatedPixels = counters.calculatedPixels;
+                    tileEvent.iterations = counters.iterations;
+                    tileEvent.commit();
+                }
+            }
+        });
+        MandelbrotRenderMetrics metrics = recorder.finish();
+        frameEvent.end();
+        if (frameEvent.shouldCommit()) {
+            frameEvent.width = width;
+            frameEvent.height = height;
+            frameEvent.parallelism = metrics.getParallelism();
+            frameEvent.calculatedPixels = metrics.getCalculatedPixels();
+            frameEvent.iterations = metrics.getIterations();
+            frameEvent.escapedPixels = metrics.getEscapedPixels();
+            frameEvent.interiorPixels = metrics.getInteriorPixels();
+            frameEvent.tiles = metrics.getTileCount();
+            frameEvent.maxTileNanos = metrics.getMaxTileNanos();
+            frameEvent.utilisation = metrics.getUtilisation();
+            frameEvent.commit();
+        }
+        lastMetrics = metrics;
+        Consumer<MandelbrotRenderMetrics> listener = metricsListener;
+        if (listener != null) {
+            listener.accept(metrics);
+        }
+    }
+
+    /**
+     * Callback used to process one chunk of a flat range of items, e.g. a list of pixels. Implementations must only touch the items in
+     * [from, to) so that chunks may be processed concurrently.
+     */
+    protected interface RangeAction {
+        void run(int from, int to);
+    }
+
+    /**
+     * Splits the range [0, count) into chunks of tileSize * tileSize items, the work of one tile, and calls the action once for each chunk.
+     * With a parallelism level of 1 the chunks are visited in order on the calling thread, otherwise they are processed on the fork-join pool.
+     * @param count the number of items.
+     * @param action the action processing a single chunk.
+     */
+    protected void forEachRange(int count, RangeAction action) {
+        int chunk = tileSize * tileSize;
+        if (parallelism <= 1 || count <= chunk) {
+            for (int from = 0; from < count; from += chunk) {
+                action.run(from, Math.min(from + chunk, count));
+            }
+        } else {
+            getPool().invoke(new RangeTask(0, count, chunk, action));
+        }
+    }
+
+    private void visitTiles(int width, int height, TileAction action) {
+        if (parallelism <= 1) {
+            for (int y0 = 0; y0 < height; y0 += tileSize) {
+                for (int x0 = 0; x0 < width; x0 += tileSize) {
+                    action.render(x0, y0, Math.min(tileSize, width - x0), Math.min(tileSize, height - y0));
+                }
+            }
+        } else if (width > 0 && height > 0) {
+            getPool().invoke(new TileTask(0, 0, width, height, tileSize, action));
+        }
+    }
+
+    private synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        return pool;
+    }
+
+    /**
+     * Fork-join task that recursively halves a range, on a chunk boundary, until it is a single chunk.
+     */
+    private static final class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int chunk;
+        private final RangeAction action;
+
+        RangeTask(int from, int to, int chunk, RangeAction action) {
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunk) {
+                action.run(from, to);
+            } else {
+                int split = from + (((to - from) / chunk + 1) / 2) * chunk;
+                invokeAll(new RangeTask(from, split, chunk, action), new RangeTask(split, to, chunk, action));
+            }
+        }
+    }
+
+    /**
+     * Fork-join task that recursively halves a region along its longer side, on a tile boundary, until it is a single tile.
+     */
+    private static final class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int x0;
+        private final int y0;
+        private final int width;
+        private final int height;
+        private final int tileSize;
+        private final TileAction action;
+
+        TileTask(int x0, int y0, int width, int height, int tileSize, TileAction action) {
+            this.x0 = x0;
+            this.y0 = y0;
+            this.width = width;
+            this.height = height;
+            this.tileSize = tileSize;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (width <= tileSize && height <= tileSize) {
+                action.render(x0, y0, width, height);
+            } else if (width >= height) {
+                int split = ((width / tileSize + 1) / 2) * tileSize;
+                invokeAll(new TileTask(x0, y0, split, height, tileSize, action),
+                        new TileTask(x0 + split, y0, width - split, height, tileSize, action));
+            } else {
+                int split = ((height / tileSize + 1) / 2) * tileSize;
+                invokeAll(new TileTask(x0, y0, width, split, tileSize, action),
+                        new TileTask(x0, y0 + split, width, height - split, tileSize, action));
+            }
+        }
+    }
+}
@@ -0,0 +1,292 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The MandelbrotDeepZoom class renders views that are too deep for double precision, i.e. whose pixel spacing is below roughly 1e-14 of the coordinates.
+ *
+ * Only one point, the reference at the centre of the view, is iterated in high precision with BigDecimal. Every pixel is then iterated in double precision as a
+ * small perturbation delta from the reference orbit: if the reference is Z_n and the pixel is Z_n + d_n with constant C + dc, then
+ * d_n+1 = 2 * Z_n * d_n + d_n^2 + dc. The deltas stay small enough to be represented accurately in a double even when C itself needs hundreds of digits.
+ *
+ * When a pixel's orbit gets closer to zero than its delta, the reference values no longer describe it accurately (a "glitch"). The pixel is then rebased:
+ * its full value becomes the new delta against the start of the reference orbit, which also lets pixels keep iterating after the reference has escaped.
+ *
+ * Optionally the first iterations can be skipped for every pixel using a series approximation d_n = A_n * dc + B_n * dc^2 + C_n * dc^3, where A, B and C
+ * are iterated once alongside the reference orbit for as long as the cubic term stays negligible across the whole view.
+ *
+ * Example usage, via MandelbrotCalculator -- a 800x800 view 1e-30 wide
+ *
+ * MandelbrotCalculator mandelCalc = new MandelbrotCalculator();
+ * BigDecimal width = new BigDecimal("1e-30");
+ * BigDecimal minReal = new BigDecimal("-1.74995768370609350360221450607069970727110579726252077930242837820286008082972804887218672784431700831100544507655659531379747541999999995");
+ * BigDecimal minImaginary = new BigDecimal("0.00000000000000000278793706563379402178294753790944364927085054500163081379043930650189386849765202169477470552201325772332454726999999995");
+ * int[][] madelbrotData = mandelCalc.calcMandelbrotSet(800, 800, minReal, minReal.add(width), minImaginary, minImaginary.add(width), 5000, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+ */
+public class MandelbrotDeepZoom {
+
+    // Extra decimal digits carried in the reference orbit beyond those needed to resolve one pixel
+    private static final int GUARD_DIGITS = 12;
+    // A pixel is glitched when |Z + d|^2 falls below this fraction of |Z|^2
+    private static final double GLITCH_TOLERANCE = 1e-6;
+    // The series approximation is used while |C_n| * |dc|^2 stays below this fraction of |A_n| for the furthest pixel
+    private static final double SERIES_TOLERANCE = 1e-12;
+
+    private final MandelbrotCalculator calculator;
+    private boolean seriesApproximation = true;
+
+    private final LongAdder glitchedPixels = new LongAdder();
+    private final LongAdder rebases = new LongAdder();
+    private volatile int skippedIterations;
+
+    /**
+     * Constructs a deep zoom renderer which renders tiles with the given calculator's parallelism and tile size.
+     * @param calculator the calculator providing the tiling settings.
+     */
+    public MandelbrotDeepZoom(MandelbrotCalculator calculator) {
+        if (calculator == null) {
+            throw new IllegalArgumentException("Calculator cannot be null");
+        }
+        this.calculator = calculator;
+    }
+
+    /**
+     * Method to calculate the Mandelbrot set for the given parameter settings, which are the same as for MandelbrotCalculator.calcMandelbrotSet but given with arbitrary precision.
+     * Pixel [y][x] has C = (minReal + x * realStep) + i * (minImaginary + y * imaginaryStep).
+     * @param xResolution the number of pixels on the x-axis in your GUI display.
+     * @param yResolution the number of pixels on the y-axis in your GUI display.
+     * @param minReal the lower real bound for the complex constant C (equivalent to lower bound X value in Mandelbrot set)
+     * @param maxReal the upper real bound for the complex constant C (equivalent to upper bound X value in Mandelbrot set)
+     * @param minImaginary the lower imaginary bound for the complex constant C (equivalent to lower bound Y value in Mandelbrot set)
+     * @param maxImaginary the upper imaginary bound for the complex constant C (equivalent to upper bound Y value in Mandelbrot set)
+     * @param maxIterations the maximum number of iterations to iterate the complex formula
+     * @param radiusSquared the squared of the radius to use when determining whether Z escaped the circle in the complex plain or remained bounded.
+     * @return the 2-D integer array mandelbrotData[yResolution][xResolution] containing the for each [y][x] pixel the number of iterations needed until Z escaped the bounding radius, or maxIterations otherwise.
+     */
+    public int[][] calcMandelbrotSet(int xResolution, int yResolution, BigDecimal minReal, BigDecimal maxReal, BigDecimal minImaginary, BigDecimal maxImaginary, int maxIterations, double radiusSquared) {
+        int[][] mandelbrotData = new int[yResolution][xResolution];
+        if (xResolution <= 0 || yResolution <= 0) {
+            return mandelbrotData;
+        }
+
+        BigDecimal realStep = maxReal.subtract(minReal).divide(BigDecimal.valueOf(xResolution), MathContext.DECIMAL64);
+        BigDecimal imaginaryStep = maxImaginary.subtract(minImaginary).divide(BigDecimal.valueOf(yResolution), MathContext.DECIMAL64);
+        MathContext mc = new MathContext(digitsFor(realStep.min(imaginaryStep), minReal.abs().max(minImaginary.abs())), RoundingMode.HALF_EVEN);
+
+        // The reference point is the pixel at the centre of the view, so each pixel's dc is a whole number of steps from it
+        int centreX = xResolution / 2;
+        int centreY = yResolution / 2;
+        BigDecimal refReal = minReal.add(realStep.multiply(BigDecimal.valueOf(centreX)), mc);
+        BigDecimal refImaginary = minImaginary.add(imaginaryStep.multiply(BigDecimal.valueOf(centreY)), mc);
+        double realStepD = realStep.doubleValue();
+        double imaginaryStepD = imaginaryStep.doubleValue();
+
+        ReferenceOrbit ref = new ReferenceOrbit(refReal, refImaginary, maxIterations, radiusSquared, mc);
+        double maxDeltaReal = Math.max(centreX, xResolution - centreX) * Math.abs(realStepD);
+        double maxDeltaImaginary = Math.max(centreY, yResolution - centreY) * Math.abs(imaginaryStepD);
+        int skip = seriesApproximation ? ref.fitSeries(Math.hypot(maxDeltaReal, maxDeltaImaginary), radiusSquared) : 0;
+        skippedIterations = skip;
+
+        calculator.forEachTile(xResolution, yResolution, (x0, y0, width, height) -> {
+            for (int y = y0; y < y0 + height; y++) {
+                double dci = (y - centreY) * imaginaryStepD;
+                int[] row = mandelbrotData[y];
+                for (int x = x0; x < x0 + width; x++) {
+                    double dcr = (x - centreX) * realStepD;
+                    row[x] = calcPerturbed(ref, skip, dcr, dci, maxIterations, radiusSquared);
+                }
+            }
+        });
+        return mandelbrotData;
+    }
+
+    /**
+     * Iterates one pixel as a perturbation of the reference orbit, counting iterations exactly as MandelbrotCalculator.calcMandel does.
+     */
+    private int calcPerturbed(ReferenceOrbit ref, int skip, double dcr, double dci, int maxIterations, double radiusSquared) {
+        double dr;
+        double di;
+        if (skip > 0) {
+            // d = A * dc + B * dc^2 + C * dc^3, evaluated with Horner's rule
+            double tr = ref.seriesCr * dcr - ref.seriesCi * dci + ref.seriesBr;
+            double ti = ref.seriesCr * dci + ref.seriesCi * dcr + ref.seriesBi;
+            double ur = tr * dcr - ti * dci + ref.seriesAr;
+            double ui = tr * dci + ti * dcr + ref.seriesAi;
+            dr = ur * dcr - ui * dci;
+            di = ur * dci + ui * dcr;
+        } else {
+            dr = 0;
+            di = 0;
+        }
+
+        boolean glitched = false;
+        int m = skip;
+        int n = skip;
+        while (n < maxIterations) {
+            double refR = ref.zr[m];
+            double refI = ref.zi[m];
+            double zr = refR + dr;
+            double zi = refI + di;
+            double magnitude = zr * zr + zi * zi;
+            n++;
+            if (magnitude > radiusSquared) {
+                break;
+            }
+
+            if (magnitude < GLITCH_TOLERANCE * (refR * refR + refI * refI)) {
+                glitched = true;
+            }
+            if (m == ref.length || magnitude < dr * dr + di * di) {
+                // Rebase onto the start of the reference orbit, where Z_0 = 0
+                dr = zr;
+                di = zi;
+                m = 0;
+                rebases.increment();
+                refR = 0;
+                refI = 0;
+            }
+
+            // d_n+1 = 2 * Z_n * d_n + d_n^2 + dc
+            double ndr = 2 * (refR * dr - refI * di) + (dr * dr - di * di) + dcr;
+            double ndi = 2 * (refR * di + refI * dr) + 2 * dr * di + dci;
+            dr = ndr;
+            di = ndi;
+            m++;
+        }
+        if (glitched) {
+            glitchedPixels.increment();
+        }
+        return n;
+    }
+
+    /**
+     * Works out how many decimal digits are needed to resolve a pixel of the given size at coordinates of the given magnitude.
+     */
+    private static int digitsFor(BigDecimal step, BigDecimal magnitude) {
+        int stepExponent = step.precision() - step.scale() - 1;
+        int magnitudeExponent = magnitude.signum() == 0 ? 0 : Math.max(0, magnitude.precision() - magnitude.scale() - 1);
+        return Math.max(MathContext.DECIMAL64.getPrecision(), magnitudeExponent - stepExponent + GUARD_DIGITS);
+    }
+
+    /**
+     * Enables or disables the series approximation used to skip the first iterations of every pixel.
+     * @param seriesApproximation true to enable the series approximation.
+     */
+    public void setSeriesApproximation(boolean seriesApproximation) {
+        this.seriesApproximation = seriesApproximation;
+    }
+
+    /**
+     * @return true if the series approximation is enabled.
+     */
+    public boolean isSeriesApproximation() {
+        return seriesApproximation;
+    }
+
+    /**
+     * @return the number of pixels in which a glitch was detected, and corrected by rebasing, since the counters were last reset.
+     */
+    public long getGlitchedPixelCount() {
+        return glitchedPixels.sum();
+    }
+
+    /**
+     * @return the number of times a pixel was rebased onto the start of the reference orbit since the counters were last reset.
+     */
+    public long getRebaseCount() {
+        return rebases.sum();
+    }
+
+    /**
+     * @return the number of iterations skipped for every pixel by the series approximation in the most recent render.
+     */
+    public int getSkippedIterations() {
+        return skippedIterations;
+    }
+
+    /**
+     * Resets the glitch and rebase counters to zero.
+     */
+    public void resetCounts() {
+        glitchedPixels.reset();
+        rebases.reset();
+    }
+
+    /**
+     * The orbit of the reference point, iterated with BigDecimal and stored as doubles, together with the series approximation coefficients.
+     */
+    private static final class ReferenceOrbit {
+        final double[] zr;
+        final double[] zi;
+        // Index of the last usable value: the reference escaped after it or maxIterations was reached
+        final int length;
+
+        double seriesAr;
+        double seriesAi;
+        double seriesBr;
+        double seriesBi;
+        double seriesCr;
+        double seriesCi;
+
+        ReferenceOrbit(BigDecimal cReal, BigDecimal cImaginary, int maxIterations, double radiusSquared, MathContext mc) {
+            double[] zr = new double[maxIterations + 1];
+            double[] zi = new double[maxIterations + 1];
+            BigDecimal bigZr = BigDecimal.ZERO;
+            BigDecimal bigZi = BigDecimal.ZERO;
+            BigDecimal two = BigDecimal.valueOf(2);
+            int n = 0;
+            while (n < maxIterations && zr[n] * zr[n] + zi[n] * zi[n] <= radiusSquared) {
+                BigDecimal zr2 = bigZr.multiply(bigZr, mc);
+                BigDecimal zi2 = bigZi.multiply(bigZi, mc);
+                BigDecimal nzi = two.multiply(bigZr).multiply(bigZi, mc).add(cImaginary, mc);
+                bigZr = zr2.subtract(zi2).add(cReal, mc);
+                bigZi = nzi;
+                n++;
+                zr[n] = bigZr.doubleValue();
+                zi[n] = bigZi.doubleValue();
+            }
+            this.zr = zr;
+            this.zi = zi;
+            this.length = n;
+        }
+
+        /**
+         * Iterates the series coefficients A, B and C along the orbit for as long as the cubic term stays negligible for a delta of the given size,
+         * and no pixel within that delta of the reference could have escaped.
+         * @return the number of iterations every pixel can skip, with the coefficients for that iteration stored in the series fields.
+         */
+        int fitSeries(double maxDelta, double radiusSquared) {
+            double ar = 0, ai = 0, br = 0, bi = 0, cr = 0, ci = 0;
+            double delta2 = maxDelta * maxDelta;
+            double radius = Math.sqrt(radiusSquared);
+            int skip = 0;
+            for (int n = 0; n + 1 < length; n++) {
+                // Iteration n is skipped too, so no pixel may be able to escape at it
+                double deltaBound = (Math.hypot(ar, ai) + (Math.hypot(br, bi) + Math.hypot(cr, ci) * maxDelta) * maxDelta) * maxDelta;
+                if (Math.hypot(zr[n], zi[n]) + deltaBound > radius) {
+                    break;
+                }
+                double refR2 = 2 * zr[n];
+                double refI2 = 2 * zi[n];
+                // A' = 2ZA + 1, B' = 2ZB + A^2, C' = 2ZC + 2AB
+                double nar = refR2 * ar - refI2 * ai + 1;
+                double nai = refR2 * ai + refI2 * ar;
+                double nbr = refR2 * br - refI2 * bi + (ar * ar - ai * ai);
+                double nbi = refR2 * bi + refI2 * br + 2 * ar * ai;
+                double ncr = refR2 * cr - refI2 * ci + 2 * (ar * br - ai * bi);
+                double nci = refR2 * ci + refI2 * cr + 2 * (ar * bi + ai * br);
+                if (!Double.isFinite(ncr) || !Double.isFinite(nci)
+                        || Math.hypot(ncr, nci) * delta2 > SERIES_TOLERANCE * Math.hypot(nar, nai)) {
+                    break;
+                }
+                ar = nar; ai = nai; br = nbr; bi = nbi; cr = ncr; ci = nci;
+                skip = n + 1;
+            }
+            seriesAr = ar; seriesAi = ai;
+            seriesBr = br; seriesBi = bi;
+            seriesCr = cr; seriesCi = ci;
+            return skip;
+        }
+    }
+}
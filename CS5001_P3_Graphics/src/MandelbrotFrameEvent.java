@@ -0,0 +1,52 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event covering one render of a MandelbrotCalculator, committed when render metrics are enabled and a recording is running.
+ * Its duration is the wall time of the render; the fields are those of the render's MandelbrotRenderMetrics.
+ */
+@Name("mandelbrot.Frame")
+@Label("Mandelbrot Frame")
+@Category("Mandelbrot")
+@Description("One render of a Mandelbrot frame or region")
+@StackTrace(false)
+final class MandelbrotFrameEvent extends Event {
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    @Label("Parallelism")
+    int parallelism;
+
+    @Label("Calculated Pixels")
+    long calculatedPixels;
+
+    @Label("Iterations")
+    long iterations;
+
+    @Label("Escaped Pixels")
+    long escapedPixels;
+
+    @Label("Interior Pixels")
+    long interiorPixels;
+
+    @Label("Tiles")
+    int tiles;
+
+    @Label("Slowest Tile")
+    @Timespan
+    long maxTileNanos;
+
+    @Label("Utilisation")
+    @Percentage
+    double utilisation;
+}
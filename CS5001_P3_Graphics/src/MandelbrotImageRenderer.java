@@ -0,0 +1,237 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The MandelbrotImageRenderer class renders frames straight to packed ARGB pixels, such as the backing array of a BufferedImage, instead of returning
+ * iteration values for the caller to colour in a second pass over a second buffer.
+ *
+ * Each tile is calculated into the pixels it covers and coloured in place while it is still in cache, so the only buffer is the image itself and tiles
+ * are calculated and coloured in parallel according to the calculator's parallelism level. Two colourings are available:
+ *   PALETTE   the iteration value indexes the palette, as MandelbrotPalette.getColour does; every backend, strategy and precision setting is used
+ *   SMOOTH    the normalised iteration count (see calcMandelSmooth in MandelbrotCalculator) is interpolated through the palette, removing the colour bands;
+ *             this uses the scalar double precision kernel, and is only available for the built-in Mandelbrot kernel; with a FractalKernel set,
+ *             PALETTE colouring is used
+ *
+ * With histogram equalisation the palette is spread over the distribution of iteration values in the frame rather than over the values themselves, so
+ * that a deep view whose pixels all escape between, say, 9000 and 9100 iterations still uses the whole palette. This needs every value before any pixel
+ * can be coloured, so values are held in the image's own pixels between the two passes. Each thread counts its tiles into its own histogram, of
+ * maxIterations entries, and the histograms are merged once the first pass is finished.
+ *
+ * Example usage
+ *
+ * MandelbrotImageRenderer renderer = new MandelbrotImageRenderer(mandelCalc);
+ * renderer.setColouring(MandelbrotImageRenderer.Colouring.SMOOTH);
+ * renderer.setHistogramEqualisation(true);
+ * BufferedImage image = renderer.render(800, 800, MandelbrotCalculator.INITIAL_MIN_REAL, MandelbrotCalculator.INITIAL_MAX_REAL, MandelbrotCalculator.INITIAL_MIN_IMAGINARY, MandelbrotCalculator.INITIAL_MAX_IMAGINARY, MandelbrotCalculator.INITIAL_MAX_ITERATIONS, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+ */
+public class MandelbrotImageRenderer {
+
+    /**
+     * The colourings. PALETTE colours by integer iteration value, SMOOTH by normalised iteration count.
+     */
+    public enum Colouring { PALETTE, SMOOTH }
+
+    private final MandelbrotCalculator calculator;
+    private MandelbrotPalette palette = MandelbrotPalette.defaultPalette();
+    private Colouring colouring = Colouring.PALETTE;
+    private boolean histogramEqualisation = false;
+
+    /**
+     * Constructs an image renderer.
+     * @param calculator the calculator used to calculate pixels, with its tiling, parallelism, backend, strategy and precision settings.
+     */
+    public MandelbrotImageRenderer(MandelbrotCalculator calculator) {
+        if (calculator == null) {
+            throw new IllegalArgumentException("Calculator cannot be null");
+        }
+        this.calculator = calculator;
+    }
+
+    /**
+     * Method to render a new image for the given parameter settings. See calcMandelbrotSet in MandelbrotCalculator for the parameters.
+     * @return a TYPE_INT_RGB image of xResolution x yResolution pixels.
+     */
+    public BufferedImage render(int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared) {
+        BufferedImage image = new BufferedImage(xResolution, yResolution, BufferedImage.TYPE_INT_RGB);
+        render(image, minReal, maxReal, minImaginary, maxImaginary, maxIterations, radiusSquared);
+        return image;
+    }
+
+    /**
+     * Method to render into an existing image, e.g. one reused between frames by a GUI. The frame covers the whole image.
+     * See calcMandelbrotSet in MandelbrotCalculator for the other parameters.
+     * @param image a TYPE_INT_RGB, TYPE_INT_ARGB or TYPE_INT_ARGB_PRE image, which may be a sub-image.
+     */
+    public void render(BufferedImage image, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared) {
+        int type = image.getType();
+        if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB && type != BufferedImage.TYPE_INT_ARGB_PRE) {
+            throw new IllegalArgumentException("Image must have packed int pixels: type " + type);
+        }
+        WritableRaster raster = image.getRaster();
+        SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        int[] pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+        int offset = sampleModel.getOffset(-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+        render(pixels, offset, sampleModel.getScanlineStride(), image.getWidth(), image.getHeight(), minReal, maxReal, minImaginary, maxImaginary, maxIterations, radiusSquared);
+    }
+
+    /**
+     * Method to render into a flat buffer of packed ARGB pixels, pixel [y][x] being written to argb[offset + y * stride + x].
+     * See calcMandelbrotSet in MandelbrotCalculator for the other parameters.
+     * @param argb the buffer to write the colours to.
+     * @param offset the index in argb of pixel [0][0].
+     * @param stride the distance in argb between the starts of consecutive rows, at least xResolution.
+     */
+    public void render(int[] argb, int offset, int stride, int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared) {
+        if (xResolution < 0 || yResolution < 0 || stride < xResolution) {
+            throw new IllegalArgumentException("Invalid resolution or stride: " + xResolution + "x" + yResolution + ", stride " + stride);
+        }
+        if (xResolution == 0 || yResolution == 0) {
+            return;
+        }
+        if (offset < 0 || offset + (long) (yResolution - 1) * stride + xResolution > argb.length) {
+            throw new IndexOutOfBoundsException("Frame does not fit in a buffer of " + argb.length + " pixels at offset " + offset);
+        }
+        double realStep = (maxReal - minReal)/xResolution;
+        double imaginaryStep = (maxImaginary - minImaginary)/yResolution;
+        MandelbrotPalette palette = this.palette;
+        boolean smooth = colouring == Colouring.SMOOTH && calculator.getKernel() == null;
+        boolean equalise = histogramEqualisation;
+        Map<Thread, int[]> histograms = new ConcurrentHashMap<>();
+
+        calculator.forEachTile(xResolution, yResolution, (x0, y0, width, height) -> {
+            int[] histogram = equalise ? histograms.computeIfAbsent(Thread.currentThread(), thread -> new int[maxIterations]) : null;
+            if (!smooth) {
+                calculator.renderTile(argb, offset + y0 * stride + x0, stride, x0, y0, width, height, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+            }
+            for (int y = y0; y < y0 + height; y++) {
+                int row = offset + y * stride + x0;
+                if (!smooth && !equalise) {
+                    palette.colour(argb, row, argb, row, width, maxIterations);
+                } else if (!smooth) {
+                    for (int i = row; i < row + width; i++) {
+                        if (argb[i] < maxIterations) {
+                            histogram[argb[i]]++;
+                        }
+                    }
+                } else {
+                    double cImaginary = minImaginary + y * imaginaryStep;
+                    for (int x = x0; x < x0 + width; x++) {
+                        double value = calculator.calcMandelSmooth(minReal + x * realStep, cImaginary, maxIterations, radiusSquared);
+                        if (!equalise) {
+                            argb[row + x - x0] = palette.getSmoothColour(value, maxIterations);
+                        } else {
+                            // Held as float bits until the second pass; the fraction only needs to be accurate enough to blend between palette entries
+                            float held = value < maxIterations ? Math.min((float) value, Math.nextDown((float) maxIterations)) : maxIterations;
+                            argb[row + x - x0] = Float.floatToRawIntBits(held);
+                            if (held < maxIterations) {
+                                histogram[(int) held]++;
+                            }
+                        }
+                    }
+                }
+            }
+        });
+        if (!equalise) {
+            return;
+        }
+
+        // cumulative[n] is the fraction of escaped pixels with a value below n
+        long[] counts = new long[maxIterations + 1];
+        for (int[] histogram : histograms.values()) {
+            for (int n = 0; n < maxIterations; n++) {
+                counts[n + 1] += histogram[n];
+            }
+        }
+        for (int n = 1; n <= maxIterations; n++) {
+            counts[n] += counts[n - 1];
+        }
+        double[] cumulative = new double[maxIterations + 1];
+        double total = Math.max(1, counts[maxIterations]);
+        for (int n = 0; n <= maxIterations; n++) {
+            cumulative[n] = counts[n] / total;
+        }
+        int size = palette.getSize();
+        int[] equalised = new int[maxIterations];
+        if (!smooth) {
+            for (int n = 0; n < maxIterations; n++) {
+                equalised[n] = palette.getColourAt(size * (cumulative[n] + cumulative[n + 1]) / 2);
+            }
+        }
+        int interior = palette.getInteriorColour();
+
+        calculator.forEachTile(xResolution, yResolution, (x0, y0, width, height) -> {
+            for (int y = y0; y < y0 + height; y++) {
+                int row = offset + y * stride + x0;
+                for (int i = row; i < row + width; i++) {
+                    if (!smooth) {
+                        int value = argb[i];
+                        argb[i] = value >= maxIterations ? interior : equalised[value];
+                    } else {
+                        float value = Float.intBitsToFloat(argb[i]);
+                        if (value >= maxIterations) {
+                            argb[i] = interior;
+                        } else {
+                            int n = (int) value;
+                            argb[i] = palette.getColourAt(size * (cumulative[n] + (value - n) * (cumulative[n + 1] - cumulative[n])));
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Sets the palette used to colour pixels.
+     * @param palette the palette.
+     */
+    public void setPalette(MandelbrotPalette palette) {
+        if (palette == null) {
+            throw new IllegalArgumentException("Palette cannot be null");
+        }
+        this.palette = palette;
+    }
+
+    /**
+     * @return the palette used to colour pixels.
+     */
+    public MandelbrotPalette getPalette() {
+        return palette;
+    }
+
+    /**
+     * Selects how iteration values are mapped to the palette.
+     * @param colouring the colouring to use.
+     */
+    public void setColouring(Colouring colouring) {
+        if (colouring == null) {
+            throw new IllegalArgumentException("Colouring cannot be null");
+        }
+        this.colouring = colouring;
+    }
+
+    /**
+     * @return how iteration values are mapped to the palette.
+     */
+    public Colouring getColouring() {
+        return colouring;
+    }
+
+    /**
+     * Enables or disables histogram equalisation, which spreads the palette once over the distribution of iteration values in each frame.
+     * @param histogramEqualisation true to equalise.
+     */
+    public void setHistogramEqualisation(boolean histogramEqualisation) {
+        this.histogramEqualisation = histogramEqualisation;
+    }
+
+    /**
+     * @return true if histogram equalisation is enabled.
+     */
+    public boolean isHistogramEqualisation() {
+        return histogramEqualisation;
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * The MandelbrotPalette class maps iteration values to ARGB colours.
+ *
+ * A palette is a cyclic table of colours: a pixel which escaped after n iterations gets colour n modulo the size of the table, and a pixel which
+ * reached maxIterations gets the interior colour. Tables are usually built by interpolating between a few colour stops with gradient.
+ *
+ * Example usage
+ *
+ * MandelbrotPalette palette = MandelbrotPalette.defaultPalette();
+ * int argb = palette.getColour(madelbrotData[y][x], MandelbrotCalculator.INITIAL_MAX_ITERATIONS);
+ */
+public class MandelbrotPalette {
+
+    // Default palette settings, a blue, white and orange gradient with a black interior
+    protected static final int DEFAULT_SIZE = 256;
+    protected static final int DEFAULT_INTERIOR_COLOUR = 0xFF000000;
+    protected static final int[] DEFAULT_STOPS = {0xFF000764, 0xFF206BCB, 0xFFEDFFFF, 0xFFFFAA00, 0xFF000200};
+
+    private final int[] colours;
+    private final int interiorColour;
+
+    /**
+     * Constructs a palette from a table of colours.
+     * @param colours the ARGB colours for escaped pixels, indexed by iteration value modulo the table size. The array is copied.
+     * @param interiorColour the ARGB colour for pixels which reached maxIterations.
+     */
+    public MandelbrotPalette(int[] colours, int interiorColour) {
+        if (colours == null || colours.length == 0) {
+            throw new IllegalArgumentException("A palette needs at least one colour");
+        }
+        this.colours = colours.clone();
+        this.interiorColour = interiorColour;
+    }
+
+    /**
+     * @return the default palette, a cyclic blue, white and orange gradient of DEFAULT_SIZE colours with a black interior.
+     */
+    public static MandelbrotPalette defaultPalette() {
+        return gradient(DEFAULT_SIZE, DEFAULT_INTERIOR_COLOUR, DEFAULT_STOPS);
+    }
+
+    /**
+     * Builds a cyclic palette by interpolating linearly, per channel, between equally spaced colour stops, and from the last stop back to the first.
+     * @param size the number of colours in the table.
+     * @param interiorColour the ARGB colour for pixels which reached maxIterations.
+     * @param stops the ARGB colour stops, at least one.
+     * @return the palette.
+     */
+    public static MandelbrotPalette gradient(int size, int interiorColour, int... stops) {
+        if (size < 1 || stops.length == 0) {
+            throw new IllegalArgumentException("A gradient needs a size and a colour stop: " + size + ", " + stops.length);
+        }
+        int[] colours = new int[size];
+        for (int i = 0; i < size; i++) {
+            double position = (double) i * stops.length / size;
+            int stop = (int) position;
+            colours[i] = interpolate(stops[stop], stops[(stop + 1) % stops.length], position - stop);
+        }
+        return new MandelbrotPalette(colours, interiorColour);
+    }
+
+    /**
+     * Interpolates linearly between two ARGB colours, channel by channel.
+     * @param from the colour at fraction 0.
+     * @param to the colour at fraction 1.
+     * @param fraction the position between the colours, from 0 to 1.
+     * @return the interpolated ARGB colour.
+     */
+    protected static int interpolate(int from, int to, double fraction) {
+        int argb = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int a = (from >>> shift) & 0xFF;
+            int b = (to >>> shift) & 0xFF;
+            argb |= ((int) Math.round(a + (b - a) * fraction) & 0xFF) << shift;
+        }
+        return argb;
+    }
+
+    /**
+     * Returns the colour of one pixel.
+     * @param iterations the iteration value of the pixel.
+     * @param maxIterations the maximum number of iterations the pixel was iterated for.
+     * @return the ARGB colour.
+     */
+    public int getColour(int iterations, int maxIterations) {
+        return iterations >= maxIterations ? interiorColour : colours[iterations % colours.length];
+    }
+
+    /**
+     * Returns the colour of one pixel from a continuous iteration value, interpolating between neighbouring colours of the table.
+     * @param iterations the continuous iteration value of the pixel, e.g. from smooth colouring.
+     * @param maxIterations the maximum number of iterations the pixel was iterated for.
+     * @return the ARGB colour.
+     */
+    public int getSmoothColour(double iterations, int maxIterations) {
+        return iterations >= maxIterations ? interiorColour : getColourAt(iterations);
+    }
+
+    /**
+     * Returns the colour at a continuous position in the table, interpolating between the entries either side. Positions wrap around the table.
+     * @param position the position, at least 0; position i is exactly getTableColour(i).
+     * @return the ARGB colour.
+     */
+    public int getColourAt(double position) {
+        int index = (int) position;
+        int from = index % colours.length;
+        return interpolate(colours[from], colours[(from + 1) % colours.length], position - index);
+    }
+
+    /**
+     * Colours a run of pixels from a flat buffer of iteration values into a flat buffer of ARGB values.
+     * @param iterations the iteration values.
+     * @param offset the index in iterations of the first pixel.
+     * @param argb the buffer to write the colours to.
+     * @param argbOffset the index in argb at which the colour of the first pixel is written.
+     * @param count the number of pixels to colour.
+     * @param maxIterations the maximum number of iterations the pixels were iterated for.
+     */
+    public void colour(int[] iterations, int offset, int[] argb, int argbOffset, int count, int maxIterations) {
+        for (int i = 0; i < count; i++) {
+            int value = iterations[offset + i];
+            argb[argbOffset + i] = value >= maxIterations ? interiorColour : colours[value % colours.length];
+        }
+    }
+
+    /**
+     * @return the number of colours in the table.
+     */
+    public int getSize() {
+        return colours.length;
+    }
+
+    /**
+     * @param index the index, from 0 to getSize() - 1.
+     * @return the ARGB colour at the given index of the table.
+     */
+    public int getTableColour(int index) {
+        return colours[index];
+    }
+
+    /**
+     * @return the ARGB colour for pixels which reached maxIterations.
+     */
+    public int getInteriorColour() {
+        return interiorColour;
+    }
+}
@@ -0,0 +1,90 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * The MandelbrotPosterRenderer class renders poster-scale frames, such as 100000 x 100000 pixels, that are far too large to hold in the heap as an int[][].
+ *
+ * The frame is rendered one file tile at a time into a MandelbrotTiledFile. Each tile is memory-mapped and the calculator writes its iteration values
+ * straight into the mapping, splitting the tile into its own smaller tiles across its parallelism level, so working memory is bounded by one mapped tile
+ * plus the calculator's per-thread scratch space. A tile is marked complete only after it has been forced to disk; rendering the same poster into the
+ * same file again, after an interruption, skips the completed tiles. The file records the calculator's kernel, precision and strategy, and a file
+ * rendered with other settings is rejected rather than resumed; a kernel without a cacheKey is only recognised within the same run.
+ *
+ * Example usage
+ *
+ * MandelbrotCalculator mandelCalc = new MandelbrotCalculator();
+ * mandelCalc.setParallelism(Runtime.getRuntime().availableProcessors());
+ * MandelbrotPosterRenderer poster = new MandelbrotPosterRenderer(mandelCalc, 1024);
+ * poster.render(Paths.get("poster.mpst"), 100000, 100000, MandelbrotCalculator.INITIAL_MIN_REAL, MandelbrotCalculator.INITIAL_MAX_REAL, MandelbrotCalculator.INITIAL_MIN_IMAGINARY, MandelbrotCalculator.INITIAL_MAX_IMAGINARY, 1000, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+ */
+public class MandelbrotPosterRenderer {
+
+    private final MandelbrotCalculator calculator;
+    private final int tileSize;
+    private volatile boolean stopRequested = false;
+
+    /**
+     * Constructs a poster renderer.
+     * @param calculator the calculator used to render each tile, with its backend, strategy and parallelism settings.
+     * @param tileSize the edge length in pixels of the tiles stored in the file.
+     */
+    public MandelbrotPosterRenderer(MandelbrotCalculator calculator, int tileSize) {
+        if (calculator == null) {
+            throw new IllegalArgumentException("Calculator cannot be null");
+        }
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("Tile size must be at least 1: " + tileSize);
+        }
+        this.calculator = calculator;
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Renders the poster into the given file, creating it if needed and skipping tiles already completed by an earlier, interrupted render.
+     * If stop is called the render returns after the tile in progress, leaving the file ready to be resumed.
+     * @param path the file to render into.
+     * @param xResolution the number of pixels on the x-axis of the poster.
+     * @param yResolution the number of pixels on the y-axis of the poster.
+     * @param minReal the lower real bound for the complex constant C (equivalent to lower bound X value in Mandelbrot set)
+     * @param maxReal the upper real bound for the complex constant C (equivalent to upper bound X value in Mandelbrot set)
+     * @param minImaginary the lower imaginary bound for the complex constant C (equivalent to lower bound Y value in Mandelbrot set)
+     * @param maxImaginary the upper imaginary bound for the complex constant C (equivalent to upper bound Y value in Mandelbrot set)
+     * @param maxIterations the maximum number of iterations to iterate the complex formula
+     * @param radiusSquared the squared of the radius to use when determining whether Z escaped the circle in the complex plain or remained bounded.
+     * @return the number of tiles rendered by this call.
+     * @throws IOException if the file cannot be opened or written, or holds a different render.
+     */
+    public int render(Path path, int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared) throws IOException {
+        int rendered = 0;
+        stopRequested = false;
+        try (MandelbrotTiledFile file = MandelbrotTiledFile.open(path, xResolution, yResolution, tileSize, minReal, maxReal, minImaginary, maxImaginary, maxIterations, radiusSquared,
+                MandelbrotTileCache.configuration(calculator))) {
+            for (int tileY = 0; tileY < file.getTilesY(); tileY++) {
+                for (int tileX = 0; tileX < file.getTilesX(); tileX++) {
+                    if (file.isTileComplete(tileX, tileY)) {
+                        continue;
+                    }
+                    if (stopRequested) {
+                        return rendered;
+                    }
+                    int x0 = tileX * tileSize;
+                    int y0 = tileY * tileSize;
+                    MappedByteBuffer tile = file.mapTile(tileX, tileY);
+                    calculator.calcMandelbrotRegion(tile.asIntBuffer(), 0, tileSize, x0, y0, Math.min(tileSize, xResolution - x0), Math.min(tileSize, yResolution - y0),
+                            xResolution, yResolution, minReal, maxReal, minImaginary, maxImaginary, maxIterations, radiusSquared);
+                    file.completeTile(tileX, tileY, tile);
+                    rendered++;
+                }
+            }
+        }
+        return rendered;
+    }
+
+    /**
+     * Asks a render in progress on another thread to return after its current tile. Completed tiles are kept in the file.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+}
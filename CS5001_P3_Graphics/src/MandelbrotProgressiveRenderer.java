@@ -0,0 +1,195 @@
+import java.io.Closeable;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * The MandelbrotProgressiveRenderer class renders a frame coarse to fine, publishing each tile of each pass as soon as it is finished,
+ * so that a viewer of a very large frame sees a usable image after a small fraction of the work.
+ *
+ * The first pass iterates one pixel in every 4x4 block (1/16 of the frame), the second pass the remaining pixels of every 2x2 block (a further 3/16)
+ * and the last pass the remaining 3/4. Every pixel is iterated exactly once, so the total work is that of a single calcMandelbrotSet call, and the
+ * final frame is identical to the one calcMandelbrotSet returns with the PER_PIXEL strategy. The samples of each pass are calculated as strided lattice
+ * rows, so the vector backend is used for every pass and each sample has the same C as the corresponding pixel of the full frame, in every precision.
+ *
+ * Progress is published to Flow subscribers as one Update per tile per pass. An Update holds the pixels of its tile at the resolution of its pass,
+ * with each sample repeated over its block, so drawing every Update into an image as it arrives gives a progressively sharper picture.
+ * Updates are delivered asynchronously by a SubmissionPublisher; rendering waits when a subscriber's buffer is full.
+ *
+ * Example usage
+ *
+ * try (MandelbrotProgressiveRenderer renderer = new MandelbrotProgressiveRenderer(mandelCalc)) {
+ *     renderer.subscribe(subscriber);
+ *     int[][] madelbrotData = renderer.render(7680, 4320, MandelbrotCalculator.INITIAL_MIN_REAL, MandelbrotCalculator.INITIAL_MAX_REAL, MandelbrotCalculator.INITIAL_MIN_IMAGINARY, MandelbrotCalculator.INITIAL_MAX_IMAGINARY, MandelbrotCalculator.INITIAL_MAX_ITERATIONS, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+ * }
+ */
+public class MandelbrotProgressiveRenderer implements Flow.Publisher<MandelbrotProgressiveRenderer.Update>, Closeable {
+
+    // The sampling steps of the passes, coarsest first; each step must be half of the one before
+    private static final int[] PASS_STEPS = {4, 2, 1};
+
+    private final MandelbrotCalculator calculator;
+    private final SubmissionPublisher<Update> publisher = new SubmissionPublisher<>();
+
+    /**
+     * Constructs a progressive renderer.
+     * @param calculator the calculator used to iterate pixels, with its tiling, parallelism, backend and precision settings.
+     */
+    public MandelbrotProgressiveRenderer(MandelbrotCalculator calculator) {
+        if (calculator == null) {
+            throw new IllegalArgumentException("Calculator cannot be null");
+        }
+        this.calculator = calculator;
+    }
+
+    /**
+     * Subscribes to the updates of every following render.
+     * @param subscriber the subscriber.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super Update> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    /**
+     * Method to calculate the Mandelbrot set progressively, publishing an Update for every tile of every pass. Returns once the last pass is finished.
+     * See calcMandelbrotSet in MandelbrotCalculator for the parameters.
+     * @return the 2-D integer array mandelbrotData[yResolution][xResolution] containing the for each [y][x] pixel the number of iterations needed until Z escaped the bounding radius, or maxIterations otherwise.
+     */
+    public int[][] render(int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared) {
+        double realStep = (maxReal - minReal)/xResolution;
+        double imaginaryStep = (maxImaginary - minImaginary)/yResolution;
+        int[] frame = new int[xResolution * yResolution];
+
+        for (int pass = 0; pass < PASS_STEPS.length; pass++) {
+            int step = PASS_STEPS[pass];
+            boolean first = pass == 0;
+            int passNumber = pass;
+            // Tiles are laid out on the lattice of this pass's samples, so that every block lies within one tile
+            calculator.forEachTile((xResolution + step - 1) / step, (yResolution + step - 1) / step, (i0, j0, width, height) -> {
+                int[] samples = new int[width];
+                for (int j = j0; j < j0 + height; j++) {
+                    int y = j * step;
+                    if (first || j % 2 == 1) {
+                        // Nothing on this row has been sampled yet
+                        calculator.calcLatticeRow(samples, 0, i0 * step, step, y, width, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+                        for (int i = 0; i < width; i++) {
+                            frame[y * xResolution + (i0 + i) * step] = samples[i];
+                        }
+                    } else {
+                        // Even samples on this row were sampled by the previous pass, so only the odd ones are calculated
+                        int firstOdd = i0 + (i0 % 2 == 0 ? 1 : 0);
+                        int count = (i0 + width - firstOdd + 1) / 2;
+                        calculator.calcLatticeRow(samples, 0, firstOdd * step, 2 * step, y, count, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+                        for (int i = 0; i < count; i++) {
+                            frame[y * xResolution + (firstOdd + 2 * i) * step] = samples[i];
+                        }
+                    }
+                }
+                publisher.submit(new Update(passNumber, step, frame, xResolution, yResolution, i0 * step, j0 * step, width * step, height * step));
+            });
+        }
+
+        int[][] mandelbrotData = new int[yResolution][xResolution];
+        for (int y = 0; y < yResolution; y++) {
+            System.arraycopy(frame, y * xResolution, mandelbrotData[y], 0, xResolution);
+        }
+        return mandelbrotData;
+    }
+
+    /**
+     * Completes every subscription.
+     */
+    @Override
+    public void close() {
+        publisher.close();
+    }
+
+
+
+    /**
+     * The pixels of one tile after one pass. Pixel (x, y) of the frame is held at getValues()[(y - getY()) * getWidth() + (x - getX())].
+     */
+    public static final class Update {
+        private final int pass;
+        private final int step;
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+        private final int[] values;
+
+        private Update(int pass, int step, int[] frame, int xResolution, int yResolution, int x, int y, int width, int height) {
+            this.pass = pass;
+            this.step = step;
+            this.x = x;
+            this.y = y;
+            this.width = Math.min(width, xResolution - x);
+            this.height = Math.min(height, yResolution - y);
+            this.values = new int[this.width * this.height];
+            // Repeat each sample over its step x step block
+            for (int row = 0; row < this.height; row++) {
+                int sampleRow = (y + row) - (y + row) % step;
+                for (int column = 0; column < this.width; column++) {
+                    int sampleColumn = (x + column) - (x + column) % step;
+                    values[row * this.width + column] = frame[sampleRow * xResolution + sampleColumn];
+                }
+            }
+        }
+
+        /**
+         * @return the index of the pass, 0 for the coarsest.
+         */
+        public int getPass() {
+            return pass;
+        }
+
+        /**
+         * @return the distance in pixels between the samples of this pass; each sample is repeated over a step x step block.
+         */
+        public int getStep() {
+            return step;
+        }
+
+        /**
+         * @return true if this update is from the last pass, so its values are final.
+         */
+        public boolean isFinal() {
+            return step == 1;
+        }
+
+        /**
+         * @return the x coordinate in the frame of the left edge of the tile.
+         */
+        public int getX() {
+            return x;
+        }
+
+        /**
+         * @return the y coordinate in the frame of the top edge of the tile.
+         */
+        public int getY() {
+            return y;
+        }
+
+        /**
+         * @return the width of the tile in pixels.
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * @return the height of the tile in pixels.
+         */
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * @return the iteration values of the tile, row by row. The array is not copied.
+         */
+        public int[] getValues() {
+            return values;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/**
+ * The MandelbrotRenderMetrics class records how one render of a MandelbrotCalculator went: its wall time, how much work it did and how long its tiles took.
+ *
+ * A render is one call that splits an area into tiles, for example calcMandelbrotSet or calcMandelbrotRegion. Pixel, iteration and escape counts are gathered
+ * from the double precision kernel, so renders by perturbation (MandelbrotDeepZoom) report their wall time and tiles but no pixel counts.
+ * Pixels filled by the Mariani-Silver strategy are counted as escaped or interior but not as calculated, and do not add to the iteration count.
+ *
+ * The tile timing histogram has one bucket per power of two: bucket i counts the tiles which took between 2^i and 2^(i+1) - 1 nanoseconds.
+ * Comparing the busy time of all tiles with the wall time multiplied by the parallelism level shows how well the render kept its threads busy.
+ *
+ * Example usage
+ *
+ * mandelCalc.setMetricsEnabled(true);
+ * int[][] madelbrotData = mandelCalc.calcMandelbrotSet(800, 800, ...);
+ * System.out.println(mandelCalc.getLastMetrics());
+ */
+public final class MandelbrotRenderMetrics {
+
+    private final int width;
+    private final int height;
+    private final int parallelism;
+    private final long wallNanos;
+    private final long calculatedPixels;
+    private final long iterations;
+    private final long escapedPixels;
+    private final long interiorPixels;
+    private final int tileCount;
+    private final long busyNanos;
+    private final long maxTileNanos;
+    private final long[] tileHistogram;
+
+    private MandelbrotRenderMetrics(Recorder recorder, long wallNanos) {
+        this.width = recorder.width;
+        this.height = recorder.height;
+        this.parallelism = recorder.parallelism;
+        this.wallNanos = wallNanos;
+        this.calculatedPixels = recorder.calculatedPixels;
+        this.iterations = recorder.iterations;
+        this.escapedPixels = recorder.escapedPixels;
+        this.interiorPixels = recorder.interiorPixels;
+        this.tileCount = recorder.tileCount;
+        this.busyNanos = recorder.busyNanos;
+        this.maxTileNanos = recorder.maxTileNanos;
+        this.tileHistogram = recorder.tileHistogram.clone();
+    }
+
+    /**
+     * @return the width in pixels of the rendered area.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height in pixels of the rendered area.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the calculator's parallelism level during the render.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return the wall time of the render in nanoseconds.
+     */
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * @return the number of pixels in the rendered area.
+     */
+    public long getPixels() {
+        return (long) width * height;
+    }
+
+    /**
+     * @return the number of pixels whose iteration value was calculated by the kernel rather than filled in.
+     */
+    public long getCalculatedPixels() {
+        return calculatedPixels;
+    }
+
+    /**
+     * @return the sum of the iteration values of the calculated pixels. This is the number of iterations executed, except that pixels resolved early by
+     * the interior shortcuts count as maxIterations.
+     */
+    public long getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return the number of pixels which escaped before maxIterations.
+     */
+    public long getEscapedPixels() {
+        return escapedPixels;
+    }
+
+    /**
+     * @return the number of pixels which reached maxIterations and are treated as inside the set.
+     */
+    public long getInteriorPixels() {
+        return interiorPixels;
+    }
+
+    /**
+     * @return the number of pixels in the rendered area per second of wall time.
+     */
+    public double getPixelsPerSecond() {
+        return wallNanos == 0 ? 0 : getPixels() * 1e9 / wallNanos;
+    }
+
+    /**
+     * @return the number of iterations per second of wall time.
+     */
+    public double getIterationsPerSecond() {
+        return wallNanos == 0 ? 0 : iterations * 1e9 / wallNanos;
+    }
+
+    /**
+     * @return the number of tiles the area was split into.
+     */
+    public int getTileCount() {
+        return tileCount;
+    }
+
+    /**
+     * @return the total time spent rendering tiles, summed over all threads, in nanoseconds.
+     */
+    public long getBusyNanos() {
+        return busyNanos;
+    }
+
+    /**
+     * @return the time taken by the slowest tile in nanoseconds.
+     */
+    public long getMaxTileNanos() {
+        return maxTileNanos;
+    }
+
+    /**
+     * @return the fraction of the available thread time spent rendering tiles, busy time / (wall time * parallelism). Low values on a parallel render
+     * point to threads waiting for work, for example behind a single expensive tile.
+     */
+    public double getUtilisation() {
+        return wallNanos == 0 ? 0 : (double) busyNanos / ((double) wallNanos * parallelism);
+    }
+
+    /**
+     * @return a copy of the tile timing histogram, where element i counts the tiles which took between 2^i and 2^(i+1) - 1 nanoseconds.
+     */
+    public long[] getTileHistogram() {
+        return tileHistogram.clone();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder histogram = new StringBuilder();
+        for (int i = 0; i < tileHistogram.length; i++) {
+            if (tileHistogram[i] > 0) {
+                histogram.append(histogram.length() == 0 ? "" : " ").append("2^").append(i).append("ns:").append(tileHistogram[i]);
+            }
+        }
+        return String.format("%dx%d in %.3f ms, %.0f pixels/s, %d iterations, %d escaped, %d interior, %d tiles, utilisation %.2f, tiles [%s]",
+                width, height, wallNanos / 1e6, getPixelsPerSecond(), iterations, escapedPixels, interiorPixels, tileCount, getUtilisation(), histogram);
+    }
+
+
+
+    /**
+     * Counts kept by each rendering thread for the tile it is currently rendering.
+     */
+    static final class TileCounters {
+        boolean active;
+        long calculatedPixels;
+        long iterations;
+        long escapedPixels;
+        long interiorPixels;
+
+        void start() {
+            active = true;
+            calculatedPixels = 0;
+            iterations = 0;
+            escapedPixels = 0;
+            interiorPixels = 0;
+        }
+
+        void addRow(int[] values, int offset, int count, int maxIterations) {
+            long sum = 0;
+            int interior = 0;
+            for (int i = offset; i < offset + count; i++) {
+                int value = values[i];
+                sum += value;
+                if (value >= maxIterations) {
+                    interior++;
+                }
+            }
+            calculatedPixels += count;
+            iterations += sum;
+            interiorPixels += interior;
+            escapedPixels += count - interior;
+        }
+
+        void addFill(long count, int value, int maxIterations) {
+            if (value >= maxIterations) {
+                interiorPixels += count;
+            } else {
+                escapedPixels += count;
+            }
+        }
+    }
+
+    /**
+     * Collects the tiles of one render, which may finish on several threads, into a MandelbrotRenderMetrics.
+     */
+    static final class Recorder {
+        private final int width;
+        private final int height;
+        private final int parallelism;
+        private final long startNanos = System.nanoTime();
+        private long calculatedPixels;
+        private long iterations;
+        private long escapedPixels;
+        private long interiorPixels;
+        private int tileCount;
+        private long busyNanos;
+        private long maxTileNanos;
+        private final long[] tileHistogram = new long[Long.SIZE];
+
+        Recorder(int width, int height, int parallelism) {
+            this.width = width;
+            this.height = height;
+            this.parallelism = parallelism;
+        }
+
+        synchronized void addTile(TileCounters counters, long nanos) {
+            calculatedPixels += counters.calculatedPixels;
+            iterations += counters.iterations;
+            escapedPixels += counters.escapedPixels;
+            interiorPixels += counters.interiorPixels;
+            tileCount++;
+            busyNanos += nanos;
+            maxTileNanos = Math.max(maxTileNanos, nanos);
+            tileHistogram[Math.max(0, 63 - Long.numberOfLeadingZeros(nanos))]++;
+        }
+
+        synchronized MandelbrotRenderMetrics finish() {
+            return new MandelbrotRenderMetrics(this, System.nanoTime() - startNanos);
+        }
+    }
+}
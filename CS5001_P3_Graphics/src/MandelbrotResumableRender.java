@@ -0,0 +1,284 @@
+import java.util.Arrays;
+
+/**
+ * The MandelbrotResumableRender class renders one fixed view and keeps the state of every pixel that has not escaped yet,
+ * so that the view can be re-rendered with a larger maxIterations by continuing only those pixels from where they stopped.
+ * Pixels that have already escaped are never recomputed, and the results are identical to rendering from scratch with calcMandelbrotSet.
+ *
+ * The state of the unescaped pixels is held in compact primitive arrays (pixel index, Z real, Z imaginary), which shrink as pixels escape.
+ * All unescaped pixels have been iterated the same number of times, so no per-pixel iteration count needs to be kept for them.
+ *
+ * Only the built-in Mandelbrot iteration is resumable: render throws IllegalStateException while a FractalKernel is set on the calculator.
+ * FLOAT and DOUBLE precision are supported, with Z kept in the precision the view was started in, so a later render throws IllegalStateException if the
+ * calculator's effective precision has changed. DOUBLE_DOUBLE is rejected: keeping its Z would double the stored state per pixel, and views that
+ * deep are rendered by perturbation in MandelbrotDeepZoom rather than re-rendered with more iterations.
+ *
+ * Example usage -- render a view at 50 iterations, then bring out more detail at 500
+ *
+ * MandelbrotResumableRender render = new MandelbrotResumableRender(new MandelbrotCalculator(), 800, 800, MandelbrotCalculator.INITIAL_MIN_REAL, MandelbrotCalculator.INITIAL_MAX_REAL, MandelbrotCalculator.INITIAL_MIN_IMAGINARY, MandelbrotCalculator.INITIAL_MAX_IMAGINARY, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+ * int[][] preview = render.render(50);
+ * int[][] detailed = render.render(500);
+ */
+public class MandelbrotResumableRender {
+
+    // Marks a pixel which has not escaped within the iterations calculated so far
+    private static final int NOT_ESCAPED = -1;
+
+    private final MandelbrotCalculator calculator;
+    private final int xResolution;
+    private final int yResolution;
+    private final double minReal;
+    private final double realStep;
+    private final double minImaginary;
+    private final double imaginaryStep;
+    private final double radiusSquared;
+
+    // Iteration value of each escaped pixel, or NOT_ESCAPED
+    private final int[] iterations;
+    // The number of iterations every unescaped pixel has been iterated for
+    private int iterated = 0;
+    private boolean started = false;
+    // The precision (FLOAT or DOUBLE) the view was started in
+    private MandelbrotCalculator.Precision precision;
+
+    // Compact state of the unescaped pixels: pixel index and current value of Z
+    private int[] pendingPixels = new int[0];
+    private double[] pendingZr = new double[0];
+    private double[] pendingZi = new double[0];
+    private int pendingCount = 0;
+    private final Object pendingLock = new Object();
+
+    /**
+     * Constructs a resumable render of the given view. Nothing is calculated until render is called.
+     * @param calculator the calculator providing the tiling settings and the cardioid check setting.
+     * @param xResolution the number of pixels on the x-axis in your GUI display.
+     * @param yResolution the number of pixels on the y-axis in your GUI display.
+     * @param minReal the lower real bound for the complex constant C (equivalent to lower bound X value in Mandelbrot set)
+     * @param maxReal the upper real bound for the complex constant C (equivalent to upper bound X value in Mandelbrot set)
+     * @param minImaginary the lower imaginary bound for the complex constant C (equivalent to lower bound Y value in Mandelbrot set)
+     * @param maxImaginary the upper imaginary bound for the complex constant C (equivalent to upper bound Y value in Mandelbrot set)
+     * @param radiusSquared the squared of the radius to use when determining whether Z escaped the circle in the complex plain or remained bounded.
+     */
+    public MandelbrotResumableRender(MandelbrotCalculator calculator, int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary, double radiusSquared) {
+        if (calculator == null) {
+            throw new IllegalArgumentException("Calculator cannot be null");
+        }
+        if (xResolution < 0 || yResolution < 0) {
+            throw new IllegalArgumentException("Resolution cannot be negative: " + xResolution + "x" + yResolution);
+        }
+        this.calculator = calculator;
+        this.xResolution = xResolution;
+        this.yResolution = yResolution;
+        this.minReal = minReal;
+        this.realStep = (maxReal - minReal)/xResolution;
+        this.minImaginary = minImaginary;
+        this.imaginaryStep = (maxImaginary - minImaginary)/yResolution;
+        this.radiusSquared = radiusSquared;
+        this.iterations = new int[xResolution * yResolution];
+    }
+
+    /**
+     * Renders the view for the given maximum number of iterations. The first call iterates every pixel; a later call with a larger maxIterations only
+     * continues the pixels that had not escaped, and a call with a smaller maxIterations only reads the stored results.
+     * @param maxIterations the maximum number of iterations to iterate the complex formula
+     * @return the 2-D integer array mandelbrotData[yResolution][xResolution] containing the for each [y][x] pixel the number of iterations needed until Z escaped the bounding radius, or maxIterations otherwise.
+     * @throws IllegalStateException if a FractalKernel is set on the calculator, if the calculator's precision is or resolves to DOUBLE_DOUBLE,
+     * or if its precision resolves differently from the render that started the view.
+     */
+    public synchronized int[][] render(int maxIterations) {
+        FractalKernel kernel = calculator.getKernel();
+        if (kernel != null) {
+            throw new IllegalStateException("Resumable renders only support the built-in Mandelbrot kernel, not " + kernel);
+        }
+        MandelbrotCalculator.Precision selected = calculator.getPrecision();
+        if (selected == MandelbrotCalculator.Precision.AUTO) {
+            selected = MandelbrotCalculator.selectPrecision(realStep);
+        }
+        if (selected == MandelbrotCalculator.Precision.DOUBLE_DOUBLE) {
+            throw new IllegalStateException("Resumable renders do not support DOUBLE_DOUBLE precision");
+        }
+        if (started && selected != precision) {
+            throw new IllegalStateException("Precision changed from " + precision + " to " + selected + " since the view was started");
+        }
+        if (!started) {
+            precision = selected;
+            start(maxIterations);
+        } else if (maxIterations > iterated) {
+            resume(maxIterations);
+        }
+
+        int[][] mandelbrotData = new int[yResolution][xResolution];
+        for (int y = 0; y < yResolution; y++) {
+            int[] row = mandelbrotData[y];
+            for (int x = 0; x < xResolution; x++) {
+                int value = iterations[y * xResolution + x];
+                row[x] = value == NOT_ESCAPED ? maxIterations : Math.min(value, maxIterations);
+            }
+        }
+        return mandelbrotData;
+    }
+
+    /**
+     * @return the number of pixels which have not escaped within the iterations calculated so far, and would be continued by a larger maxIterations.
+     */
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * @return the number of iterations calculated so far for the pixels which have not escaped.
+     */
+    public synchronized int getIteratedCount() {
+        return iterated;
+    }
+
+    /**
+     * Iterates every pixel from Z = 0, recording the state of those that do not escape.
+     */
+    private void start(int maxIterations) {
+        boolean cardioidCheck = calculator.isCardioidCheck();
+        boolean single = precision == MandelbrotCalculator.Precision.FLOAT;
+        calculator.forEachTile(xResolution, yResolution, (x0, y0, width, height) -> {
+            int[] tilePixels = new int[width * height];
+            double[] tileZr = new double[width * height];
+            double[] tileZi = new double[width * height];
+            int tileCount = 0;
+            for (int y = y0; y < y0 + height; y++) {
+                double cImaginary = minImaginary + y * imaginaryStep;
+                for (int x = x0; x < x0 + width; x++) {
+                    double cReal = minReal + x * realStep;
+                    int pixel = y * xResolution + x;
+                    if (cardioidCheck && (single
+                            ? MandelbrotCalculator.isInCardioidOrBulb(floatReal(x), (float) cImaginary)
+                            : MandelbrotCalculator.isInCardioidOrBulb(cReal, cImaginary))) {
+                        // Never escapes, so there is nothing to resume
+                        iterations[pixel] = NOT_ESCAPED;
+                        continue;
+                    }
+                    tileZr[tileCount] = 0;
+                    tileZi[tileCount] = 0;
+                    int result = single
+                            ? iterateFloat(floatReal(x), (float) cImaginary, tileZr, tileZi, tileCount, 0, maxIterations)
+                            : iterate(cReal, cImaginary, tileZr, tileZi, tileCount, 0, maxIterations);
+                    iterations[pixel] = result;
+                    if (result == NOT_ESCAPED) {
+                        tilePixels[tileCount++] = pixel;
+                    }
+                }
+            }
+            addPending(tilePixels, tileZr, tileZi, tileCount);
+        });
+        iterated = maxIterations;
+        started = true;
+    }
+
+    private void addPending(int[] pixels, double[] zr, double[] zi, int count) {
+        // Called from the tile workers while render holds the session's lock
+        synchronized (pendingLock) {
+            if (pendingCount + count > pendingPixels.length) {
+                int capacity = Math.max(pendingCount + count, pendingPixels.length * 2);
+                pendingPixels = Arrays.copyOf(pendingPixels, capacity);
+                pendingZr = Arrays.copyOf(pendingZr, capacity);
+                pendingZi = Arrays.copyOf(pendingZi, capacity);
+            }
+            System.arraycopy(pixels, 0, pendingPixels, pendingCount, count);
+            System.arraycopy(zr, 0, pendingZr, pendingCount, count);
+            System.arraycopy(zi, 0, pendingZi, pendingCount, count);
+            pendingCount += count;
+        }
+    }
+
+    /**
+     * Continues every unescaped pixel from its stored state up to maxIterations, then compacts the state of those still unescaped.
+     */
+    private void resume(int maxIterations) {
+        int from = iterated;
+        boolean single = precision == MandelbrotCalculator.Precision.FLOAT;
+        calculator.forEachRange(pendingCount, (start, end) -> {
+            for (int i = start; i < end; i++) {
+                int pixel = pendingPixels[i];
+                int x = pixel % xResolution;
+                double cImaginary = minImaginary + (pixel / xResolution) * imaginaryStep;
+                int result = single
+                        ? iterateFloat(floatReal(x), (float) cImaginary, pendingZr, pendingZi, i, from, maxIterations)
+                        : iterate(minReal + x * realStep, cImaginary, pendingZr, pendingZi, i, from, maxIterations);
+                if (result != NOT_ESCAPED) {
+                    iterations[pixel] = result;
+                    pendingPixels[i] = NOT_ESCAPED;
+                }
+            }
+        });
+
+        int kept = 0;
+        for (int i = 0; i < pendingCount; i++) {
+            if (pendingPixels[i] != NOT_ESCAPED) {
+                pendingPixels[kept] = pendingPixels[i];
+                pendingZr[kept] = pendingZr[i];
+                pendingZi[kept] = pendingZi[i];
+                kept++;
+            }
+        }
+        pendingCount = kept;
+        if (kept < pendingPixels.length / 4) {
+            pendingPixels = Arrays.copyOf(pendingPixels, kept);
+            pendingZr = Arrays.copyOf(pendingZr, kept);
+            pendingZi = Arrays.copyOf(pendingZi, kept);
+        }
+        iterated = maxIterations;
+    }
+
+    /**
+     * Iterates Z_n+1 = Z_n^2 + C from Z = (zr[slot], zi[slot]) after `from` iterations, exactly as MandelbrotCalculator.calcMandel does.
+     * @return the number of iterations at which Z escaped, or NOT_ESCAPED with the final Z written back to the slot.
+     */
+    private int iterate(double cReal, double cImaginary, double[] zrs, double[] zis, int slot, int from, int maxIterations) {
+        int iterations = from;
+        double zr = zrs[slot];
+        double zi = zis[slot];
+        while (iterations < maxIterations) {
+            double zr2 = zr * zr;
+            double zi2 = zi * zi;
+            double nzr = zr2 - zi2 + cReal;
+            double nzi = 2 * zr * zi + cImaginary;
+            zr = nzr;
+            zi = nzi;
+            iterations++;
+            if ((zr2 + zi2) > radiusSquared)
+                return iterations;
+        }
+        zrs[slot] = zr;
+        zis[slot] = zi;
+        return NOT_ESCAPED;
+    }
+
+    /**
+     * @return the real component of C for column x in single precision, rounded exactly as MandelbrotCalculator's FLOAT kernel rounds it.
+     */
+    private float floatReal(int x) {
+        return x * (float) realStep + (float) minReal;
+    }
+
+    /**
+     * Version of iterate in single precision, exactly as MandelbrotCalculator.calcMandelFloat does. Z is stored in the double arrays, which hold every float exactly.
+     */
+    private int iterateFloat(float cReal, float cImaginary, double[] zrs, double[] zis, int slot, int from, int maxIterations) {
+        int iterations = from;
+        float zr = (float) zrs[slot];
+        float zi = (float) zis[slot];
+        float radius = (float) radiusSquared;
+        while (iterations < maxIterations) {
+            float zr2 = zr * zr;
+            float zi2 = zi * zi;
+            float nzr = zr2 - zi2 + cReal;
+            float nzi = 2 * zr * zi + cImaginary;
+            zr = nzr;
+            zi = nzi;
+            iterations++;
+            if ((zr2 + zi2) > radius)
+                return iterations;
+        }
+        zrs[slot] = zr;
+        zis[slot] = zi;
+        return NOT_ESCAPED;
+    }
+}
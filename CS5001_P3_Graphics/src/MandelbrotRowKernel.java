@@ -0,0 +1,19 @@
+/**
+ * A kernel which iterates a row of pixels for the built-in Mandelbrot iteration, implemented by MandelbrotVectorKernel.
+ * MandelbrotCalculator only refers to the vector kernel through this interface, so that it compiles without the jdk.incubator.vector module.
+ */
+interface MandelbrotRowKernel {
+
+    /**
+     * Calculates the iteration values for every xStep-th pixel from x0 on one row, see MandelbrotCalculator.calcRow.
+     * If cardioidCheck is set, pixels inside the main cardioid or the period-2 bulb are given maxIterations without iterating.
+     * @return the number of pixels resolved by the cardioid and bulb test.
+     */
+    int calcRow(int[] out, int offset, int x0, int xStep, int count, double minReal, double realStep, double cImaginary, int maxIterations, double radiusSquared, boolean cardioidCheck);
+
+    /**
+     * Single precision version of calcRow, matching MandelbrotCalculator.calcMandelFloat; maxIterations must be at most 2^24.
+     * @return the number of pixels resolved by the cardioid and bulb test.
+     */
+    int calcRowFloat(int[] out, int offset, int x0, int xStep, int count, double minReal, double realStep, double cImaginary, int maxIterations, double radiusSquared, boolean cardioidCheck);
+}
@@ -0,0 +1,202 @@
+/**
+ * The MandelbrotSupersampler class renders anti-aliased frames by supersampling only the pixels on edges, where the iteration value changes sharply.
+ *
+ * A frame is first rendered once per pixel with the calculator. Every pixel whose iteration value differs by more than the threshold from its right
+ * or lower neighbour, together with that neighbour, is then sampled again on a gridSize x gridSize pattern covering the pixel, and its value is
+ * replaced by the mean of those samples. Flat regions are not sampled again, so the extra cost is proportional to the length of the edges rather than
+ * to the area of the frame. The result holds fractional iteration values, ready to be mapped to colour.
+ *
+ * The samples are placed on a regular grid moved by a random offset inside each cell (jittering), which turns the regular moire of a fixed grid into noise.
+ * The offsets are a hash of the pixel, the sample and the seed, so the same frame always renders identically, whatever the parallelism level.
+ *
+ * Example usage -- a 4x4 jittered pattern on pixels whose neighbours differ by more than one iteration
+ *
+ * MandelbrotSupersampler supersampler = new MandelbrotSupersampler(new MandelbrotCalculator());
+ * supersampler.setGridSize(4);
+ * double[][] smoothData = supersampler.calcMandelbrotSet(800, 800, MandelbrotCalculator.INITIAL_MIN_REAL, MandelbrotCalculator.INITIAL_MAX_REAL, MandelbrotCalculator.INITIAL_MIN_IMAGINARY, MandelbrotCalculator.INITIAL_MAX_IMAGINARY, MandelbrotCalculator.INITIAL_MAX_ITERATIONS, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+ */
+public class MandelbrotSupersampler {
+
+    // Default sampling settings
+    protected static final int DEFAULT_GRID_SIZE = 4;
+    protected static final int DEFAULT_THRESHOLD = 1;
+    protected static final double DEFAULT_JITTER = 1.0;
+
+    private final MandelbrotCalculator calculator;
+    private int gridSize = DEFAULT_GRID_SIZE;
+    private int threshold = DEFAULT_THRESHOLD;
+    private double jitter = DEFAULT_JITTER;
+    private long seed = 0;
+
+    // Statistics of the last frame
+    private volatile int lastSupersampledPixels;
+
+    /**
+     * Constructs a supersampler.
+     * @param calculator the calculator used to render the frame and the samples, with its tiling, backend and precision settings.
+     */
+    public MandelbrotSupersampler(MandelbrotCalculator calculator) {
+        if (calculator == null) {
+            throw new IllegalArgumentException("Calculator cannot be null");
+        }
+        this.calculator = calculator;
+    }
+
+    /**
+     * Method to calculate an anti-aliased frame for the given parameter settings.
+     * Pixel [y][x] covers the area centred on the point calcMandelbrotSet samples for it, so flat regions have exactly the values calcMandelbrotSet returns.
+     * @param xResolution the number of pixels on the x-axis in your GUI display.
+     * @param yResolution the number of pixels on the y-axis in your GUI display.
+     * @param minReal the lower real bound for the complex constant C (equivalent to lower bound X value in Mandelbrot set)
+     * @param maxReal the upper real bound for the complex constant C (equivalent to upper bound X value in Mandelbrot set)
+     * @param minImaginary the lower imaginary bound for the complex constant C (equivalent to lower bound Y value in Mandelbrot set)
+     * @param maxImaginary the upper imaginary bound for the complex constant C (equivalent to upper bound Y value in Mandelbrot set)
+     * @param maxIterations the maximum number of iterations to iterate the complex formula
+     * @param radiusSquared the squared of the radius to use when determining whether Z escaped the circle in the complex plain or remained bounded.
+     * @return the 2-D array smoothData[yResolution][xResolution] containing for each [y][x] pixel its iteration value, averaged over its samples if it is on an edge.
+     */
+    public double[][] calcMandelbrotSet(int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared) {
+        int[] frame = new int[xResolution * yResolution];
+        calculator.calcMandelbrotSet(frame, 0, xResolution, xResolution, yResolution, minReal, maxReal, minImaginary, maxImaginary, maxIterations, radiusSquared);
+        double realStep = (maxReal - minReal)/xResolution;
+        double imaginaryStep = (maxImaginary - minImaginary)/yResolution;
+
+        // Mark both pixels of every horizontally or vertically adjacent pair whose values differ by more than the threshold
+        boolean[] edges = new boolean[frame.length];
+        int edgeCount = 0;
+        for (int y = 0; y < yResolution; y++) {
+            for (int x = 0; x < xResolution; x++) {
+                int i = y * xResolution + x;
+                if (x + 1 < xResolution && Math.abs(frame[i] - frame[i + 1]) > threshold) {
+                    edgeCount += mark(edges, i) + mark(edges, i + 1);
+                }
+                if (y + 1 < yResolution && Math.abs(frame[i] - frame[i + xResolution]) > threshold) {
+                    edgeCount += mark(edges, i) + mark(edges, i + xResolution);
+                }
+            }
+        }
+
+        double[][] smoothData = new double[yResolution][xResolution];
+        int samplesPerPixel = gridSize * gridSize;
+        calculator.forEachTile(xResolution, yResolution, (x0, y0, width, height) -> {
+            int[] sample = new int[1];
+            for (int y = y0; y < y0 + height; y++) {
+                double[] row = smoothData[y];
+                for (int x = x0; x < x0 + width; x++) {
+                    int i = y * xResolution + x;
+                    if (!edges[i]) {
+                        row[x] = frame[i];
+                        continue;
+                    }
+                    long sum = 0;
+                    for (int s = 0; s < samplesPerPixel; s++) {
+                        // Offset of the sample from the pixel's own point, in pixels, within [-0.5, 0.5)
+                        double u = (s % gridSize + 0.5 + jitter * (random(x, y, 2 * s) - 0.5)) / gridSize - 0.5;
+                        double v = (s / gridSize + 0.5 + jitter * (random(x, y, 2 * s + 1) - 0.5)) / gridSize - 0.5;
+                        double cImaginary = minImaginary + (y + v) * imaginaryStep;
+                        calculator.calcRow(sample, 0, 0, 1, minReal + (x + u) * realStep, realStep, cImaginary, maxIterations, radiusSquared);
+                        sum += sample[0];
+                    }
+                    row[x] = (double) sum / samplesPerPixel;
+                }
+            }
+        });
+        lastSupersampledPixels = edgeCount;
+        return smoothData;
+    }
+
+    private static int mark(boolean[] edges, int i) {
+        if (edges[i]) {
+            return 0;
+        }
+        edges[i] = true;
+        return 1;
+    }
+
+    /**
+     * Returns a pseudo-random value in [0, 1) determined by the seed, the pixel and the index, using the finaliser of MurmurHash3 to mix the bits.
+     */
+    private double random(int x, int y, int index) {
+        long h = seed ^ (x * 0x9E3779B97F4A7C15L) ^ (y * 0xC2B2AE3D27D4EB4FL) ^ (index * 0x165667B19E3779F9L);
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (h >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Sets the number of samples per side of the pattern used on edge pixels, so that each edge pixel is sampled gridSize * gridSize times.
+     * @param gridSize the number of samples per side, at least 1.
+     */
+    public void setGridSize(int gridSize) {
+        if (gridSize < 1) {
+            throw new IllegalArgumentException("Grid size must be at least 1: " + gridSize);
+        }
+        this.gridSize = gridSize;
+    }
+
+    /**
+     * @return the number of samples per side of the pattern used on edge pixels.
+     */
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    /**
+     * Sets the largest difference in iteration value between neighbouring pixels which is not treated as an edge.
+     * @param threshold the threshold, at least 0.
+     */
+    public void setThreshold(int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold cannot be negative: " + threshold);
+        }
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return the largest difference in iteration value between neighbouring pixels which is not treated as an edge.
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Sets how far samples are moved from the centres of their grid cells, from 0 for a regular grid to 1 for anywhere in the cell.
+     * @param jitter the jitter amount, between 0 and 1.
+     */
+    public void setJitter(double jitter) {
+        if (!(jitter >= 0 && jitter <= 1)) {
+            throw new IllegalArgumentException("Jitter must be between 0 and 1: " + jitter);
+        }
+        this.jitter = jitter;
+    }
+
+    /**
+     * @return how far samples are moved from the centres of their grid cells.
+     */
+    public double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * Sets the seed of the jittered pattern. Frames rendered with the same seed and settings are identical.
+     * @param seed the seed.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return the seed of the jittered pattern.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return the number of pixels which were supersampled in the last frame.
+     */
+    public int getLastSupersampledPixelCount() {
+        return lastSupersampledPixels;
+    }
+}
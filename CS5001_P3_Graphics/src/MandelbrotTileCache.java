@@ -0,0 +1,295 @@
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The MandelbrotTileCache class renders frames from cached square tiles, so that popular regions are only calculated once.
+ *
+ * Frames are snapped onto a global lattice: the pixel step is quantised to 24 significant bits and pixel (px, py) of the lattice has
+ * C = (px * realStep) + i * (py * imaginaryStep), so a frame's minReal and minImaginary are rounded to the nearest lattice point (at most half a pixel).
+ * The lattice is cut into tileSize x tileSize tiles keyed by (tile x, tile y, realStep, imaginaryStep, maxIterations, radiusSquared, configuration),
+ * where the configuration names the calculator's kernel with its parameters, its precision and its strategy, so that changing any of them between
+ * frames never serves tiles calculated with the old settings. The kernel is named by its cacheKey. A kernel without a cacheKey is named by its
+ * toString instead, which need not be the same in another run, so its tiles are cached in memory only and never read from or written to the store.
+ *
+ * Tiles are looked up in a bounded in-memory LRU tier first, then in an optional memory-mapped MandelbrotTileStore on disk, and only calculated
+ * if both miss. Calculated tiles are written to the store straight away, so tiles evicted from memory can be read back and the store survives restarts.
+ *
+ * Example usage
+ *
+ * try (MandelbrotTileCache cache = new MandelbrotTileCache(new MandelbrotCalculator(), 256, 512, Paths.get("tile-cache"))) {
+ *     int[][] madelbrotData = cache.calcMandelbrotSet(800, 800, MandelbrotCalculator.INITIAL_MIN_REAL, MandelbrotCalculator.INITIAL_MAX_REAL, MandelbrotCalculator.INITIAL_MIN_IMAGINARY, MandelbrotCalculator.INITIAL_MAX_IMAGINARY, MandelbrotCalculator.INITIAL_MAX_ITERATIONS, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+ * }
+ */
+public class MandelbrotTileCache implements Closeable {
+
+    private final MandelbrotCalculator calculator;
+    private final int tileSize;
+    private final int maxTiles;
+    private final MandelbrotTileStore store;
+    private final Map<TileKey, int[]> tiles;
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructs a tile cache.
+     * @param calculator the calculator used to calculate missing tiles.
+     * @param tileSize the edge length of the cached tiles in pixels.
+     * @param maxTiles the maximum number of tiles held in memory.
+     * @param storeDirectory the directory of the on-disk tile store, or null to cache in memory only.
+     * @throws IOException if the tile store cannot be opened.
+     */
+    public MandelbrotTileCache(MandelbrotCalculator calculator, int tileSize, int maxTiles, Path storeDirectory) throws IOException {
+        if (calculator == null) {
+            throw new IllegalArgumentException("Calculator cannot be null");
+        }
+        if (tileSize < 1 || maxTiles < 1) {
+            throw new IllegalArgumentException("Tile size and tile count must be at least 1: " + tileSize + ", " + maxTiles);
+        }
+        this.calculator = calculator;
+        this.tileSize = tileSize;
+        this.maxTiles = maxTiles;
+        this.store = storeDirectory == null ? null : new MandelbrotTileStore(storeDirectory, tileSize);
+        this.tiles = new LinkedHashMap<TileKey, int[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TileKey, int[]> eldest) {
+                if (size() > MandelbrotTileCache.this.maxTiles) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Method to calculate the Mandelbrot set for the given parameter settings from cached tiles, calculating only the tiles not already cached.
+     * The view is snapped to the cache's lattice, see the class description.
+     * @param xResolution the number of pixels on the x-axis in your GUI display.
+     * @param yResolution the number of pixels on the y-axis in your GUI display.
+     * @param minReal the lower real bound for the complex constant C (equivalent to lower bound X value in Mandelbrot set)
+     * @param maxReal the upper real bound for the complex constant C (equivalent to upper bound X value in Mandelbrot set)
+     * @param minImaginary the lower imaginary bound for the complex constant C (equivalent to lower bound Y value in Mandelbrot set)
+     * @param maxImaginary the upper imaginary bound for the complex constant C (equivalent to upper bound Y value in Mandelbrot set)
+     * @param maxIterations the maximum number of iterations to iterate the complex formula
+     * @param radiusSquared the squared of the radius to use when determining whether Z escaped the circle in the complex plain or remained bounded.
+     * @return the 2-D integer array mandelbrotData[yResolution][xResolution] containing the for each [y][x] pixel the number of iterations needed until Z escaped the bounding radius, or maxIterations otherwise.
+     */
+    public int[][] calcMandelbrotSet(int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared) {
+        int[][] mandelbrotData = new int[yResolution][xResolution];
+        if (xResolution <= 0 || yResolution <= 0) {
+            return mandelbrotData;
+        }
+        double realStep = quantise((maxReal - minReal)/xResolution);
+        double imaginaryStep = quantise((maxImaginary - minImaginary)/yResolution);
+        long firstX = Math.round(minReal / realStep);
+        long firstY = Math.round(minImaginary / imaginaryStep);
+        long firstTileX = Math.floorDiv(firstX, tileSize);
+        long firstTileY = Math.floorDiv(firstY, tileSize);
+        long lastTileX = Math.floorDiv(firstX + xResolution - 1, tileSize);
+        long lastTileY = Math.floorDiv(firstY + yResolution - 1, tileSize);
+        String configuration = configuration(calculator);
+        FractalKernel kernel = calculator.getKernel();
+        MandelbrotTileStore tileStore = kernel == null || kernel.cacheKey() != null ? store : null;
+
+        for (long tileY = firstTileY; tileY <= lastTileY; tileY++) {
+            for (long tileX = firstTileX; tileX <= lastTileX; tileX++) {
+                TileKey key = new TileKey(tileX, tileY, realStep, imaginaryStep, maxIterations, radiusSquared, configuration);
+                int[] tile = getTile(key, tileStore);
+                copyTile(tile, tileX * tileSize - firstX, tileY * tileSize - firstY, mandelbrotData, xResolution, yResolution);
+            }
+        }
+        return mandelbrotData;
+    }
+
+    /**
+     * Returns a tile from memory, from the store, or by calculating it.
+     * @param store the store to use, or null if the tile must not be persisted.
+     */
+    private int[] getTile(TileKey key, MandelbrotTileStore store) {
+        int[] tile;
+        synchronized (tiles) {
+            tile = tiles.get(key);
+        }
+        if (tile != null) {
+            memoryHits.increment();
+            return tile;
+        }
+
+        tile = new int[tileSize * tileSize];
+        try {
+            if (store != null && store.read(key, tile)) {
+                diskHits.increment();
+            } else {
+                misses.increment();
+                calculator.calcRegion(tile, 0, tileSize, 0, 0, tileSize, tileSize, key.tileX * tileSize * key.realStep, key.realStep,
+                        key.tileY * tileSize * key.imaginaryStep, key.imaginaryStep, key.maxIterations, key.radiusSquared);
+                if (store != null) {
+                    store.write(key, tile);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Tile store failed for " + key, e);
+        }
+        synchronized (tiles) {
+            tiles.put(key, tile);
+        }
+        return tile;
+    }
+
+    /**
+     * Copies the part of a tile that overlaps the frame, the tile's top left pixel being at (left, top) in the frame.
+     */
+    private void copyTile(int[] tile, long left, long top, int[][] mandelbrotData, int xResolution, int yResolution) {
+        int fromX = (int) Math.max(0, -left);
+        int toX = (int) Math.min(tileSize, xResolution - left);
+        for (int y = (int) Math.max(0, -top); y < tileSize && top + y < yResolution; y++) {
+            System.arraycopy(tile, y * tileSize + fromX, mandelbrotData[(int) (top + y)], (int) (left + fromX), toX - fromX);
+        }
+    }
+
+    /**
+     * Names every calculator setting other than the view that affects iteration values. MandelbrotTiledFile stores the same name in its header.
+     */
+    static String configuration(MandelbrotCalculator calculator) {
+        FractalKernel kernel = calculator.getKernel();
+        String name = kernel == null ? "Mandelbrot" : kernel.cacheKey();
+        if (name == null) {
+            name = kernel.toString();
+        }
+        return name + "/" + calculator.getPrecision() + "/" + calculator.getStrategy();
+    }
+
+    /**
+     * Keeps the 24 most significant bits of the mantissa of a pixel step, so that nearly equal scales share tiles.
+     */
+    private static double quantise(double step) {
+        return Double.longBitsToDouble(Double.doubleToLongBits(step) & ~((1L << 28) - 1));
+    }
+
+    /**
+     * @return the number of tiles served from the in-memory tier.
+     */
+    public long getMemoryHits() {
+        return memoryHits.sum();
+    }
+
+    /**
+     * @return the number of tiles read back from the on-disk store.
+     */
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    /**
+     * @return the number of tiles that had to be calculated.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of tiles evicted from the in-memory tier.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of tiles currently held in memory.
+     */
+    public int getMemoryTileCount() {
+        synchronized (tiles) {
+            return tiles.size();
+        }
+    }
+
+    /**
+     * @return the number of tiles in the on-disk store, or 0 if the cache is memory only.
+     */
+    public int getStoredTileCount() {
+        return store == null ? 0 : store.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    /**
+     * Identifies a tile: its position on the lattice and every parameter that affects its iteration values.
+     */
+    static final class TileKey {
+        final long tileX;
+        final long tileY;
+        final double realStep;
+        final double imaginaryStep;
+        final int maxIterations;
+        final double radiusSquared;
+        final String configuration;
+
+        TileKey(long tileX, long tileY, double realStep, double imaginaryStep, int maxIterations, double radiusSquared, String configuration) {
+            this.tileX = tileX;
+            this.tileY = tileY;
+            this.realStep = realStep;
+            this.imaginaryStep = imaginaryStep;
+            this.maxIterations = maxIterations;
+            this.radiusSquared = radiusSquared;
+            this.configuration = configuration;
+        }
+
+        static TileKey read(DataInput in) throws IOException {
+            return new TileKey(in.readLong(), in.readLong(), in.readDouble(), in.readDouble(), in.readInt(), in.readDouble(), in.readUTF());
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeLong(tileX);
+            out.writeLong(tileY);
+            out.writeDouble(realStep);
+            out.writeDouble(imaginaryStep);
+            out.writeInt(maxIterations);
+            out.writeDouble(radiusSquared);
+            out.writeUTF(configuration);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true; }
+            if (!(obj instanceof TileKey)) {
+                return false; }
+            TileKey other = (TileKey) obj;
+            return tileX == other.tileX && tileY == other.tileY
+                    && Double.compare(realStep, other.realStep) == 0 && Double.compare(imaginaryStep, other.imaginaryStep) == 0
+                    && maxIterations == other.maxIterations && Double.compare(radiusSquared, other.radiusSquared) == 0
+                    && configuration.equals(other.configuration);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = Long.hashCode(tileX);
+            hash = 31 * hash + Long.hashCode(tileY);
+            hash = 31 * hash + Double.hashCode(realStep);
+            hash = 31 * hash + Double.hashCode(imaginaryStep);
+            hash = 31 * hash + maxIterations;
+            hash = 31 * hash + Double.hashCode(radiusSquared);
+            return 31 * hash + configuration.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "tile (" + tileX + ", " + tileY + ") step " + realStep + "x" + imaginaryStep + ", " + maxIterations + " iterations, " + configuration;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Compact binary encoding of a tile of iteration values, used by the tile farm to send tiles back from workers.
+ *
+ * Values are run-length encoded in row order: each run is the value followed by the length of the run, both as unsigned LEB128 varints (7 bits per
+ * byte, low bits first, high bit set on every byte but the last). Flat regions, e.g. the interior of the set, shrink to a few bytes per row or less,
+ * and typical iteration values take one or two bytes instead of four.
+ */
+final class MandelbrotTileCodec {
+
+    private MandelbrotTileCodec() {
+    }
+
+    /**
+     * Encodes count values from values[offset].
+     * @return the number of bytes written to out.
+     */
+    static int encode(int[] values, int offset, int count, ByteArrayOutputStream out) {
+        int start = out.size();
+        int i = offset;
+        int end = offset + count;
+        while (i < end) {
+            int value = values[i];
+            int run = 1;
+            while (i + run < end && values[i + run] == value) {
+                run++;
+            }
+            writeVarint(value, out);
+            writeVarint(run, out);
+            i += run;
+        }
+        return out.size() - start;
+    }
+
+    /**
+     * Decodes count values from an encoding made by encode into values[offset].
+     * @throws IllegalArgumentException if the encoding is malformed or does not hold exactly count values.
+     */
+    static void decode(byte[] encoded, int length, int[] values, int offset, int count) {
+        int[] position = {0};
+        int i = offset;
+        int end = offset + count;
+        while (position[0] < length) {
+            int value = readVarint(encoded, length, position);
+            int run = readVarint(encoded, length, position);
+            if (run < 1 || run > end - i) {
+                throw new IllegalArgumentException("Invalid run of " + run + " values at value " + (i - offset) + " of " + count);
+            }
+            for (int j = 0; j < run; j++) {
+                values[i++] = value;
+            }
+        }
+        if (i != end) {
+            throw new IllegalArgumentException("Encoding holds " + (i - offset) + " values, expected " + count);
+        }
+    }
+
+    private static void writeVarint(int value, ByteArrayOutputStream out) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] encoded, int length, int[] position) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (position[0] >= length) {
+                throw new IllegalArgumentException("Truncated varint at byte " + position[0]);
+            }
+            int b = encoded[position[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long at byte " + position[0]);
+    }
+}
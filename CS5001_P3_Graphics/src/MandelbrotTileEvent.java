@@ -0,0 +1,36 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event covering one tile of a render, committed when render metrics are enabled and a recording is running.
+ * Tiles are short, so recordings will usually want a threshold on this event.
+ */
+@Name("mandelbrot.Tile")
+@Label("Mandelbrot Tile")
+@Category("Mandelbrot")
+@Description("One tile of a Mandelbrot render")
+@StackTrace(false)
+final class MandelbrotTileEvent extends Event {
+
+    @Label("X")
+    int x;
+
+    @Label("Y")
+    int y;
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    @Label("Calculated Pixels")
+    long calculatedPixels;
+
+    @Label("Iterations")
+    long iterations;
+}
@@ -0,0 +1,483 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The MandelbrotTileFarm class renders a frame by sending its tiles to worker JVMs over TCP, so that frames too large for the memory bandwidth or heap
+ * of one JVM can be spread over several, on one machine or many. Workers are started with MandelbrotTileWorker.
+ *
+ * The coordinator splits the frame into tiles of tileSize x tileSize pixels and keeps them in a shared queue. Each worker connection takes tiles from the
+ * queue, keeping PIPELINE_DEPTH requests in flight so that the worker starts its next tile while the result of the last one is on the wire.
+ * If a connection fails or times out, the tiles in flight on it are put back in the queue for the other workers, and the worker is left out of the
+ * rest of the frame; it is reconnected at the start of the next frame. The frame fails only if every worker fails.
+ *
+ * Protocol (big-endian, one connection per worker):
+ *   handshake   coordinator sends MAGIC, VERSION; worker replies MAGIC
+ *   request     tile id, x0, y0, width, height, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared
+ *               (ints and doubles; pixel (x, y) has C = (minReal + x * realStep) + i * (minImaginary + y * imaginaryStep), as in calcMandelbrotSet)
+ *   response    tile id, encoded length, the tile's values encoded by MandelbrotTileCodec (run-length encoded varints)
+ * Responses on a connection come back in the order of the requests.
+ *
+ * Throughput of each worker in the last frame is available from getWorkerStats.
+ *
+ * Example usage -- two workers on localhost
+ *
+ * try (MandelbrotTileFarm farm = new MandelbrotTileFarm(List.of(new InetSocketAddress("localhost", 9001), new InetSocketAddress("localhost", 9002)))) {
+ *     int[][] madelbrotData = farm.calcMandelbrotSet(16000, 16000, MandelbrotCalculator.INITIAL_MIN_REAL, MandelbrotCalculator.INITIAL_MAX_REAL, MandelbrotCalculator.INITIAL_MIN_IMAGINARY, MandelbrotCalculator.INITIAL_MAX_IMAGINARY, MandelbrotCalculator.INITIAL_MAX_ITERATIONS, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+ *     farm.getWorkerStats().forEach(System.out::println);
+ * }
+ */
+public class MandelbrotTileFarm implements Closeable {
+
+    // Protocol constants, shared with MandelbrotTileWorker
+    static final int MAGIC = 0x4D46524D; // "MFRM"
+    static final int VERSION = 1;
+    static final int MAX_TILE_PIXELS = 1 << 22;
+
+    // Default farm settings
+    protected static final int DEFAULT_TILE_SIZE = 256;
+    protected static final int DEFAULT_TIMEOUT_MILLIS = 60000;
+    protected static final int PIPELINE_DEPTH = 2;
+
+    private final List<Connection> connections = new ArrayList<>();
+    private final ExecutorService executor;
+    private int tileSize = DEFAULT_TILE_SIZE;
+    private int timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+
+    /**
+     * Constructs a coordinator for the given workers. Connections are made at the start of the first frame.
+     * @param workers the addresses of the workers, at least one.
+     */
+    public MandelbrotTileFarm(List<InetSocketAddress> workers) {
+        if (workers == null || workers.isEmpty()) {
+            throw new IllegalArgumentException("A tile farm needs at least one worker");
+        }
+        for (InetSocketAddress address : workers) {
+            connections.add(new Connection(address));
+        }
+        this.executor = Executors.newFixedThreadPool(workers.size(), runnable -> {
+            Thread thread = new Thread(runnable, "mandelbrot-tile-farm");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Method to calculate the Mandelbrot set on the workers. See calcMandelbrotSet in MandelbrotCalculator for the parameters.
+     * @return the 2-D integer array mandelbrotData[yResolution][xResolution] containing the for each [y][x] pixel the number of iterations needed until Z escaped the bounding radius, or maxIterations otherwise.
+     * @throws IOException if every worker failed before the frame was finished.
+     */
+    public int[][] calcMandelbrotSet(int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared) throws IOException {
+        int[] frame = new int[xResolution * yResolution];
+        calcMandelbrotSet(frame, 0, xResolution, xResolution, yResolution, minReal, maxReal, minImaginary, maxImaginary, maxIterations, radiusSquared);
+        int[][] mandelbrotData = new int[yResolution][xResolution];
+        for (int y = 0; y < yResolution; y++) {
+            System.arraycopy(frame, y * xResolution, mandelbrotData[y], 0, xResolution);
+        }
+        return mandelbrotData;
+    }
+
+    /**
+     * Method to calculate the Mandelbrot set on the workers into a flat buffer, pixel [y][x] being written to out[offset + y * stride + x].
+     * See calcMandelbrotSet in MandelbrotCalculator for the parameters.
+     * @throws IOException if every worker failed before the frame was finished.
+     */
+    public synchronized void calcMandelbrotSet(int[] out, int offset, int stride, int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared) throws IOException {
+        if (xResolution < 0 || yResolution < 0 || stride < xResolution) {
+            throw new IllegalArgumentException("Invalid resolution or stride: " + xResolution + "x" + yResolution + ", stride " + stride);
+        }
+        if (xResolution == 0 || yResolution == 0) {
+            return;
+        }
+        if (offset < 0 || offset + (long) (yResolution - 1) * stride + xResolution > out.length) {
+            throw new IndexOutOfBoundsException("Frame does not fit in a buffer of " + out.length + " pixels at offset " + offset);
+        }
+        Job job = new Job(out, offset, stride, minReal, (maxReal - minReal)/xResolution, minImaginary, (maxImaginary - minImaginary)/yResolution, maxIterations, radiusSquared);
+        int id = 0;
+        for (int y0 = 0; y0 < yResolution; y0 += tileSize) {
+            for (int x0 = 0; x0 < xResolution; x0 += tileSize) {
+                job.tiles.add(new int[] {id++, x0, y0, Math.min(tileSize, xResolution - x0), Math.min(tileSize, yResolution - y0)});
+            }
+        }
+        job.remaining.set(id);
+
+        List<Future<?>> running = new ArrayList<>();
+        for (Connection connection : connections) {
+            connection.startFrame(timeoutMillis);
+            if (connection.socket != null) {
+                running.add(executor.submit(() -> connection.serve(job)));
+            }
+        }
+        try {
+            for (Future<?> future : running) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            for (Future<?> future : running) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for workers");
+        } catch (ExecutionException e) {
+            throw new IOException("Tile farm failed", e.getCause());
+        }
+        if (job.remaining.get() > 0) {
+            throw new IOException("Every worker failed with " + job.remaining.get() + " tiles unfinished");
+        }
+    }
+
+    /**
+     * @return the statistics of each worker for the last frame, in the order the workers were given.
+     */
+    public synchronized List<WorkerStats> getWorkerStats() {
+        List<WorkerStats> stats = new ArrayList<>();
+        for (Connection connection : connections) {
+            stats.add(connection.stats());
+        }
+        return stats;
+    }
+
+    /**
+     * Sets the size of the tiles sent to workers. Larger tiles cost fewer round trips, smaller tiles balance the load better and lose less work when a worker fails.
+     * @param tileSize the width and height of a tile in pixels.
+     */
+    public synchronized void setTileSize(int tileSize) {
+        if (tileSize < 1 || (long) tileSize * tileSize > MAX_TILE_PIXELS) {
+            throw new IllegalArgumentException("Tile size must be between 1 and " + (int) Math.sqrt(MAX_TILE_PIXELS) + ": " + tileSize);
+        }
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * @return the size of the tiles sent to workers.
+     */
+    public synchronized int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Sets how long to wait for a worker to connect or return a tile before treating it as failed.
+     * @param timeoutMillis the timeout in milliseconds, at least 1.
+     */
+    public synchronized void setTimeout(int timeoutMillis) {
+        if (timeoutMillis < 1) {
+            throw new IllegalArgumentException("Timeout must be at least 1 ms: " + timeoutMillis);
+        }
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return how long to wait for a worker to connect or return a tile, in milliseconds.
+     */
+    public synchronized int getTimeout() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Closes every worker connection. The workers keep running.
+     */
+    @Override
+    public synchronized void close() {
+        executor.shutdownNow();
+        for (Connection connection : connections) {
+            connection.disconnect();
+        }
+    }
+
+
+
+    /**
+     * A frame being rendered: its target buffer, its parameters and the tiles not yet handed to a worker, each as {id, x0, y0, width, height}.
+     */
+    private static final class Job {
+        final int[] out;
+        final int offset;
+        final int stride;
+        final double minReal;
+        final double realStep;
+        final double minImaginary;
+        final double imaginaryStep;
+        final int maxIterations;
+        final double radiusSquared;
+        final BlockingQueue<int[]> tiles = new LinkedBlockingQueue<>();
+        final AtomicInteger remaining = new AtomicInteger();
+
+        Job(int[] out, int offset, int stride, double minReal, double realStep, double minImaginary, double imaginaryStep, int maxIterations, double radiusSquared) {
+            this.out = out;
+            this.offset = offset;
+            this.stride = stride;
+            this.minReal = minReal;
+            this.realStep = realStep;
+            this.minImaginary = minImaginary;
+            this.imaginaryStep = imaginaryStep;
+            this.maxIterations = maxIterations;
+            this.radiusSquared = radiusSquared;
+        }
+    }
+
+    /**
+     * The connection to one worker, with its statistics for the current frame. Only used by one thread at a time.
+     */
+    private static final class Connection {
+        final InetSocketAddress address;
+        Socket socket;
+        DataInputStream in;
+        DataOutputStream out;
+        int tiles;
+        long pixels;
+        long bytesReceived;
+        long nanos;
+        int failures;
+        IOException lastFailure;
+
+        Connection(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        /**
+         * Resets the statistics and connects if not connected.
+         */
+        void startFrame(int timeoutMillis) {
+            tiles = 0;
+            pixels = 0;
+            bytesReceived = 0;
+            nanos = 0;
+            try {
+                if (socket == null) {
+                    Socket s = new Socket();
+                    socket = s;
+                    s.connect(address, timeoutMillis);
+                    s.setTcpNoDelay(true);
+                    in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                    out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    out.flush();
+                    s.setSoTimeout(timeoutMillis);
+                    if (in.readInt() != MAGIC) {
+                        throw new IOException("Not a Mandelbrot tile worker: " + address);
+                    }
+                }
+                socket.setSoTimeout(timeoutMillis);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Takes tiles from the job until every tile is finished or the connection fails, in which case the tiles in flight are put back.
+         */
+        void serve(Job job) {
+            ArrayDeque<int[]> inFlight = new ArrayDeque<>();
+            int[] tile = new int[0];
+            byte[] encoded = new byte[0];
+            long start = System.nanoTime();
+            try {
+                while (job.remaining.get() > 0) {
+                    int[] next;
+                    while (inFlight.size() < PIPELINE_DEPTH && (next = job.tiles.poll()) != null) {
+                        send(job, next);
+                        inFlight.add(next);
+                    }
+                    if (inFlight.isEmpty()) {
+                        // Nothing left to take, but another worker may yet fail and put its tiles back
+                        next = job.tiles.poll(10, TimeUnit.MILLISECONDS);
+                        if (next != null) {
+                            send(job, next);
+                            inFlight.add(next);
+                        }
+                        continue;
+                    }
+                    out.flush();
+
+                    int[] expected = inFlight.peek();
+                    int id = in.readInt();
+                    int length = in.readInt();
+                    int width = expected[3];
+                    int height = expected[4];
+                    if (id != expected[0] || length < 0 || length > 10 * width * height) {
+                        throw new IOException("Unexpected response from " + address + ": tile " + id + ", " + length + " bytes");
+                    }
+                    if (encoded.length < length) {
+                        encoded = new byte[length];
+                    }
+                    in.readFully(encoded, 0, length);
+                    if (tile.length < width * height) {
+                        tile = new int[width * height];
+                    }
+                    try {
+                        MandelbrotTileCodec.decode(encoded, length, tile, 0, width * height);
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException("Malformed tile from " + address, e);
+                    }
+                    int base = job.offset + expected[2] * job.stride + expected[1];
+                    for (int row = 0; row < height; row++) {
+                        System.arraycopy(tile, row * width, job.out, base + row * job.stride, width);
+                    }
+                    inFlight.remove();
+                    job.remaining.decrementAndGet();
+                    tiles++;
+                    pixels += (long) width * height;
+                    bytesReceived += length;
+                }
+            } catch (IOException e) {
+                job.tiles.addAll(inFlight);
+                fail(e);
+            } catch (InterruptedException e) {
+                job.tiles.addAll(inFlight);
+                Thread.currentThread().interrupt();
+            } finally {
+                nanos = System.nanoTime() - start;
+            }
+        }
+
+        private void send(Job job, int[] tile) throws IOException {
+            out.writeInt(tile[0]);
+            out.writeInt(tile[1]);
+            out.writeInt(tile[2]);
+            out.writeInt(tile[3]);
+            out.writeInt(tile[4]);
+            out.writeDouble(job.minReal);
+            out.writeDouble(job.realStep);
+            out.writeDouble(job.minImaginary);
+            out.writeDouble(job.imaginaryStep);
+            out.writeInt(job.maxIterations);
+            out.writeDouble(job.radiusSquared);
+        }
+
+        private void fail(IOException e) {
+            failures++;
+            lastFailure = e;
+            disconnect();
+        }
+
+        void disconnect() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Already failed
+                }
+                socket = null;
+                in = null;
+                out = null;
+            }
+        }
+
+        WorkerStats stats() {
+            return new WorkerStats(address, socket != null, tiles, pixels, bytesReceived, nanos, failures, lastFailure);
+        }
+    }
+
+    /**
+     * The work done by one worker in the last frame.
+     */
+    public static final class WorkerStats {
+        private final InetSocketAddress address;
+        private final boolean connected;
+        private final int tiles;
+        private final long pixels;
+        private final long bytesReceived;
+        private final long nanos;
+        private final int failures;
+        private final IOException lastFailure;
+
+        private WorkerStats(InetSocketAddress address, boolean connected, int tiles, long pixels, long bytesReceived, long nanos, int failures, IOException lastFailure) {
+            this.address = address;
+            this.connected = connected;
+            this.tiles = tiles;
+            this.pixels = pixels;
+            this.bytesReceived = bytesReceived;
+            this.nanos = nanos;
+            this.failures = failures;
+            this.lastFailure = lastFailure;
+        }
+
+        /**
+         * @return the address of the worker.
+         */
+        public InetSocketAddress getAddress() {
+            return address;
+        }
+
+        /**
+         * @return true if the worker was still connected at the end of the last frame.
+         */
+        public boolean isConnected() {
+            return connected;
+        }
+
+        /**
+         * @return the number of tiles the worker returned.
+         */
+        public int getTiles() {
+            return tiles;
+        }
+
+        /**
+         * @return the number of pixels the worker returned.
+         */
+        public long getPixels() {
+            return pixels;
+        }
+
+        /**
+         * @return the number of bytes of encoded tiles received from the worker.
+         */
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        /**
+         * @return the time the worker's connection spent on the last frame, in nanoseconds.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return the pixels returned per second over the time the worker's connection spent on the last frame.
+         */
+        public double getPixelsPerSecond() {
+            return nanos == 0 ? 0 : pixels * 1e9 / nanos;
+        }
+
+        /**
+         * @return the number of times the connection to the worker has failed since the farm was constructed.
+         */
+        public int getFailures() {
+            return failures;
+        }
+
+        /**
+         * @return the most recent failure of the connection, or null if it has never failed.
+         */
+        public IOException getLastFailure() {
+            return lastFailure;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s, %d tiles, %d pixels, %.1f Mpixels/s, %.2f bytes/pixel, %d failures",
+                    address, connected ? "connected" : "disconnected", tiles, pixels, getPixelsPerSecond() / 1e6,
+                    pixels == 0 ? 0.0 : (double) bytesReceived / pixels, failures);
+        }
+    }
+}
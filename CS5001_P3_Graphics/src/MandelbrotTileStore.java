@@ -0,0 +1,170 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The MandelbrotTileStore class persists square tiles of iteration values in a directory, so that a MandelbrotTileCache starts warm after a restart.
+ *
+ * Tiles are stored in fixed size slots of tiles.dat, which is memory-mapped in chunks of CHUNK_SLOTS slots. Every stored tile is recorded in tiles.idx
+ * by appending its key and slot number after its data has been forced to disk, so an interrupted write never leaves an index entry for a partial tile.
+ * On opening, the index is read back into memory, and a record cut short by a crash is truncated away so that new records follow the last complete one.
+ */
+public class MandelbrotTileStore implements Closeable {
+
+    private static final int MAGIC = 0x4D54494C; // "MTIL"
+    private static final int VERSION = 2;
+    private static final int CHUNK_SLOTS = 64;
+
+    private final int tileSize;
+    private final long slotBytes;
+    private final FileChannel data;
+    private final DataOutputStream index;
+    private final Map<MandelbrotTileCache.TileKey, Integer> slots = new HashMap<>();
+    private final List<MappedByteBuffer> mappedChunks = new ArrayList<>();
+    private final List<IntBuffer> chunks = new ArrayList<>();
+
+    /**
+     * Opens the store in the given directory, creating it if needed.
+     * @param directory the directory holding tiles.dat and tiles.idx.
+     * @param tileSize the edge length of the stored tiles in pixels; must match the size the store was created with.
+     * @throws IOException if the store cannot be opened or was created with a different tile size.
+     */
+    public MandelbrotTileStore(Path directory, int tileSize) throws IOException {
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("Tile size must be at least 1: " + tileSize);
+        }
+        this.tileSize = tileSize;
+        this.slotBytes = (long) tileSize * tileSize * Integer.BYTES;
+        Files.createDirectories(directory);
+        Path indexFile = directory.resolve("tiles.idx");
+
+        if (Files.exists(indexFile)) {
+            readIndex(indexFile);
+        }
+        OutputStream out = Files.newOutputStream(indexFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        this.index = new DataOutputStream(new BufferedOutputStream(out));
+        if (Files.size(indexFile) == 0) {
+            index.writeInt(MAGIC);
+            index.writeInt(VERSION);
+            index.writeInt(tileSize);
+            index.flush();
+        }
+        this.data = FileChannel.open(directory.resolve("tiles.dat"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private void readIndex(Path indexFile) throws IOException {
+        byte[] bytes = Files.readAllBytes(indexFile);
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+        DataInputStream din = new DataInputStream(in);
+        // The length of the index up to the end of the last complete record
+        int complete = 0;
+        try {
+            if (din.readInt() != MAGIC) {
+                throw new IOException("Not a tile store index: " + indexFile);
+            }
+            int storedVersion = din.readInt();
+            if (storedVersion != VERSION) {
+                throw new IOException("Tile store " + indexFile + " has version " + storedVersion + ", not " + VERSION + "; delete it to start a new store");
+            }
+            int storedTileSize = din.readInt();
+            if (storedTileSize != tileSize) {
+                throw new IOException("Tile store " + indexFile + " holds " + storedTileSize + " pixel tiles, not " + tileSize);
+            }
+            while (true) {
+                complete = bytes.length - in.available();
+                MandelbrotTileCache.TileKey key = MandelbrotTileCache.TileKey.read(din);
+                int slot = din.readInt();
+                slots.put(key, slot);
+            }
+        } catch (EOFException e) {
+            // End of the index, or a record (or the header) cut short by a crash
+        }
+        if (complete < bytes.length) {
+            try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.WRITE)) {
+                channel.truncate(complete);
+            }
+        }
+    }
+
+    /**
+     * Reads a tile into the given array.
+     * @param key the key of the tile.
+     * @param tile the array of tileSize * tileSize values to read the tile into.
+     * @return true if the tile was found in the store.
+     * @throws IOException if the tile could not be read.
+     */
+    public synchronized boolean read(MandelbrotTileCache.TileKey key, int[] tile) throws IOException {
+        Integer slot = slots.get(key);
+        if (slot == null) {
+            return false;
+        }
+        chunkFor(slot).get(slotOffset(slot), tile, 0, tileSize * tileSize);
+        return true;
+    }
+
+    /**
+     * Writes a tile to the store, unless a tile with the same key is already stored.
+     * @param key the key of the tile.
+     * @param tile the tileSize * tileSize values of the tile.
+     * @throws IOException if the tile could not be written.
+     */
+    public synchronized void write(MandelbrotTileCache.TileKey key, int[] tile) throws IOException {
+        if (slots.containsKey(key)) {
+            return;
+        }
+        int slot = slots.size();
+        IntBuffer chunk = chunkFor(slot);
+        chunk.put(slotOffset(slot), tile, 0, tileSize * tileSize);
+        mappedChunks.get(slot / CHUNK_SLOTS).force();
+
+        key.write(index);
+        index.writeInt(slot);
+        index.flush();
+        slots.put(key, slot);
+    }
+
+    /**
+     * @return the number of tiles in the store.
+     */
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        index.close();
+        data.close();
+    }
+
+    private int slotOffset(int slot) {
+        return (slot % CHUNK_SLOTS) * tileSize * tileSize;
+    }
+
+    /**
+     * Returns an int view of the mapped chunk holding the given slot, mapping chunks (and so growing the file) as needed.
+     */
+    private IntBuffer chunkFor(int slot) throws IOException {
+        int chunk = slot / CHUNK_SLOTS;
+        while (chunks.size() <= chunk) {
+            MappedByteBuffer mapped = data.map(FileChannel.MapMode.READ_WRITE, chunks.size() * CHUNK_SLOTS * slotBytes, CHUNK_SLOTS * slotBytes);
+            mappedChunks.add(mapped);
+            chunks.add(mapped.asIntBuffer());
+        }
+        return chunks.get(chunk);
+    }
+}
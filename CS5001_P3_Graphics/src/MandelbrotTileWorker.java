@@ -0,0 +1,165 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The MandelbrotTileWorker class serves tiles to a MandelbrotTileFarm coordinator over TCP. See MandelbrotTileFarm for the protocol.
+ *
+ * A worker listens on a port and serves each coordinator connection on its own thread, calculating the tiles it is sent one at a time in the order they
+ * arrive, each tile split further across the worker's own calculator according to its parallelism level.
+ *
+ * The protocol has no authentication, so a worker listens on the loopback interface unless it is given another address to bind.
+ *
+ * Example usage -- start a worker JVM on port 9001 using 4 cores, reachable by coordinators on other hosts through 192.168.1.20
+ *
+ * java MandelbrotTileWorker 9001 4 192.168.1.20
+ */
+public class MandelbrotTileWorker implements Closeable {
+
+    private final MandelbrotCalculator calculator;
+    private final ServerSocket serverSocket;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final Thread acceptThread;
+
+    /**
+     * Constructs a worker listening on the loopback interface and starts accepting connections.
+     * @param calculator the calculator used to calculate tiles, with its tiling, parallelism, backend, strategy and precision settings.
+     * @param port the port to listen on, or 0 for any free port; see getPort.
+     * @throws IOException if the port cannot be bound.
+     */
+    public MandelbrotTileWorker(MandelbrotCalculator calculator, int port) throws IOException {
+        this(calculator, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * Constructs a worker listening on the given address and starts accepting connections.
+     * @param calculator the calculator used to calculate tiles.
+     * @param address the address to listen on.
+     * @throws IOException if the address cannot be bound.
+     */
+    public MandelbrotTileWorker(MandelbrotCalculator calculator, InetSocketAddress address) throws IOException {
+        if (calculator == null) {
+            throw new IllegalArgumentException("Calculator cannot be null");
+        }
+        this.calculator = calculator;
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+        this.acceptThread = new Thread(this::accept, "mandelbrot-tile-worker-" + serverSocket.getLocalPort());
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * Starts a worker and serves until the JVM is stopped.
+     * @param args the port, optionally the parallelism level, which defaults to the number of available processors, and optionally the address to
+     *             bind, which defaults to the loopback address; 0.0.0.0 binds every interface.
+     * @throws IOException if the port cannot be bound.
+     * @throws InterruptedException if the main thread is interrupted.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: java MandelbrotTileWorker <port> [parallelism] [bind-address]");
+            System.exit(2);
+        }
+        MandelbrotCalculator calculator = new MandelbrotCalculator();
+        calculator.setParallelism(args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors());
+        InetAddress bindAddress = args.length > 2 ? InetAddress.getByName(args[2]) : InetAddress.getLoopbackAddress();
+        MandelbrotTileWorker worker = new MandelbrotTileWorker(calculator, new InetSocketAddress(bindAddress, Integer.parseInt(args[0])));
+        System.out.println("Mandelbrot tile worker listening on " + bindAddress.getHostAddress() + " port " + worker.getPort());
+        worker.acceptThread.join();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread thread = new Thread(() -> serve(socket), "mandelbrot-tile-worker-" + socket.getRemoteSocketAddress());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                // The server socket was closed, or a connection failed while being accepted
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        connections.add(socket);
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            if (in.readInt() != MandelbrotTileFarm.MAGIC || in.readInt() != MandelbrotTileFarm.VERSION) {
+                return;
+            }
+            out.writeInt(MandelbrotTileFarm.MAGIC);
+            out.flush();
+
+            int[] tile = new int[0];
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            while (true) {
+                int id;
+                try {
+                    id = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                int x0 = in.readInt();
+                int y0 = in.readInt();
+                int width = in.readInt();
+                int height = in.readInt();
+                double minReal = in.readDouble();
+                double realStep = in.readDouble();
+                double minImaginary = in.readDouble();
+                double imaginaryStep = in.readDouble();
+                int maxIterations = in.readInt();
+                double radiusSquared = in.readDouble();
+                if (width < 1 || height < 1 || (long) width * height > MandelbrotTileFarm.MAX_TILE_PIXELS) {
+                    return;
+                }
+                if (tile.length < width * height) {
+                    tile = new int[width * height];
+                }
+                calculator.calcRegion(tile, 0, width, x0, y0, width, height, minReal, realStep, minImaginary, imaginaryStep, maxIterations, radiusSquared);
+                encoded.reset();
+                MandelbrotTileCodec.encode(tile, 0, width * height, encoded);
+                out.writeInt(id);
+                out.writeInt(encoded.size());
+                encoded.writeTo(out);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The coordinator disconnected; it reassigns the tiles this connection did not return
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    /**
+     * @return the port the worker is listening on.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections and closes every open connection. Tiles in progress are abandoned.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : connections) {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,313 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The MandelbrotTiledFile class gives access to a poster-sized render stored as square tiles in a single file, which is accessed through memory mapping
+ * so that renders far larger than the heap can be written and read one tile at a time.
+ *
+ * File layout (big-endian):
+ *   header       HEADER_BYTES bytes: magic, version, xResolution, yResolution, tileSize, maxIterations, minReal, maxReal, minImaginary, maxImaginary, radiusSquared,
+ *                the length of the configuration in bytes and the configuration in UTF-8
+ *   tile table   one byte per tile, in row order, set to 1 once the tile is completely written
+ *   tiles        starting at the next multiple of 4096 bytes, tileSize * tileSize ints per tile in row order; pixel (x, y) of a tile is at index y * tileSize + x.
+ *                Tiles on the right and bottom edges are stored full size, with the pixels beyond the frame left as 0.
+ */
+public class MandelbrotTiledFile implements Closeable {
+
+    private static final int MAGIC = 0x4D505354; // "MPST"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 1024;
+    private static final int PAGE_BYTES = 4096;
+    // Header bytes before the configuration: magic to maxIterations, the five doubles and the configuration length
+    private static final int CONFIGURATION_OFFSET = 6 * Integer.BYTES + 5 * Double.BYTES + Integer.BYTES;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer tileTable;
+    private final int xResolution;
+    private final int yResolution;
+    private final int tileSize;
+    private final int maxIterations;
+    private final double minReal;
+    private final double maxReal;
+    private final double minImaginary;
+    private final double maxImaginary;
+    private final double radiusSquared;
+    private final String configuration;
+    private final int tilesX;
+    private final int tilesY;
+    private final long dataOffset;
+
+    private MandelbrotTiledFile(FileChannel channel, int xResolution, int yResolution, int tileSize, int maxIterations, double minReal, double maxReal, double minImaginary, double maxImaginary, double radiusSquared, String configuration) throws IOException {
+        this.channel = channel;
+        this.xResolution = xResolution;
+        this.yResolution = yResolution;
+        this.tileSize = tileSize;
+        this.maxIterations = maxIterations;
+        this.minReal = minReal;
+        this.maxReal = maxReal;
+        this.minImaginary = minImaginary;
+        this.maxImaginary = maxImaginary;
+        this.radiusSquared = radiusSquared;
+        this.configuration = configuration;
+        this.tilesX = (xResolution + tileSize - 1) / tileSize;
+        this.tilesY = (yResolution + tileSize - 1) / tileSize;
+        long tileCount = (long) tilesX * tilesY;
+        this.dataOffset = (HEADER_BYTES + tileCount + PAGE_BYTES - 1) / PAGE_BYTES * PAGE_BYTES;
+        this.tileTable = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES, tileCount);
+    }
+
+    /**
+     * Opens the file for the given render, creating it if it does not exist. An existing file must have been created for exactly the same render,
+     * including the calculator configuration, in which case its completed tiles are kept so that an interrupted render can carry on where it stopped.
+     * @param path the file to open.
+     * @param xResolution the number of pixels on the x-axis of the poster.
+     * @param yResolution the number of pixels on the y-axis of the poster.
+     * @param tileSize the edge length of the stored tiles in pixels.
+     * @param minReal the lower real bound for the complex constant C (equivalent to lower bound X value in Mandelbrot set)
+     * @param maxReal the upper real bound for the complex constant C (equivalent to upper bound X value in Mandelbrot set)
+     * @param minImaginary the lower imaginary bound for the complex constant C (equivalent to lower bound Y value in Mandelbrot set)
+     * @param maxImaginary the upper imaginary bound for the complex constant C (equivalent to upper bound Y value in Mandelbrot set)
+     * @param maxIterations the maximum number of iterations to iterate the complex formula
+     * @param radiusSquared the squared of the radius to use when determining whether Z escaped the circle in the complex plain or remained bounded.
+     * @param configuration the calculator settings other than the view that affect iteration values, as named by MandelbrotTileCache.configuration.
+     * @return the opened file.
+     * @throws IOException if the file cannot be opened or belongs to a different render.
+     */
+    public static MandelbrotTiledFile open(Path path, int xResolution, int yResolution, int tileSize, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared, String configuration) throws IOException {
+        if (xResolution <= 0 || yResolution <= 0 || tileSize <= 0) {
+            throw new IllegalArgumentException("Resolution and tile size must be positive: " + xResolution + "x" + yResolution + ", " + tileSize);
+        }
+        if ((long) tileSize * tileSize * Integer.BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Tile size too large to map: " + tileSize);
+        }
+        if (configuration == null) {
+            throw new IllegalArgumentException("Configuration cannot be null");
+        }
+        byte[] configurationBytes = configuration.getBytes(StandardCharsets.UTF_8);
+        if (configurationBytes.length > HEADER_BYTES - CONFIGURATION_OFFSET) {
+            throw new IllegalArgumentException("Configuration too long for the header: " + configuration);
+        }
+        if (Files.exists(path) && Files.size(path) > 0) {
+            MandelbrotTiledFile existing = open(path);
+            if (existing.xResolution != xResolution || existing.yResolution != yResolution || existing.tileSize != tileSize
+                    || existing.maxIterations != maxIterations || existing.minReal != minReal || existing.maxReal != maxReal
+                    || existing.minImaginary != minImaginary || existing.maxImaginary != maxImaginary || existing.radiusSquared != radiusSquared
+                    || !existing.configuration.equals(configuration)) {
+                existing.close();
+                throw new IOException("File " + path + " holds a different render");
+            }
+            return existing;
+        }
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(xResolution).putInt(yResolution).putInt(tileSize).putInt(maxIterations);
+        header.putDouble(minReal).putDouble(maxReal).putDouble(minImaginary).putDouble(maxImaginary).putDouble(radiusSquared);
+        header.putInt(configurationBytes.length).put(configurationBytes);
+        header.clear();
+        channel.write(header, 0);
+        return new MandelbrotTiledFile(channel, xResolution, yResolution, tileSize, maxIterations, minReal, maxReal, minImaginary, maxImaginary, radiusSquared, configuration);
+    }
+
+    /**
+     * Opens an existing file, reading the render parameters from its header.
+     * @param path the file to open.
+     * @return the opened file.
+     * @throws IOException if the file cannot be opened or is not a tiled render file.
+     */
+    public static MandelbrotTiledFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+                // keep reading until the header is complete or the file ends
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a tiled render file: " + path);
+            }
+            int xResolution = header.getInt();
+            int yResolution = header.getInt();
+            int tileSize = header.getInt();
+            int maxIterations = header.getInt();
+            double minReal = header.getDouble();
+            double maxReal = header.getDouble();
+            double minImaginary = header.getDouble();
+            double maxImaginary = header.getDouble();
+            double radiusSquared = header.getDouble();
+            int configurationLength = header.getInt();
+            if (configurationLength < 0 || configurationLength > header.remaining()) {
+                throw new IOException("Corrupt header in tiled render file: " + path);
+            }
+            byte[] configuration = new byte[configurationLength];
+            header.get(configuration);
+            return new MandelbrotTiledFile(channel, xResolution, yResolution, tileSize, maxIterations, minReal, maxReal, minImaginary, maxImaginary, radiusSquared,
+                    new String(configuration, StandardCharsets.UTF_8));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Maps one tile of the file for reading and writing; asIntBuffer() gives its tileSize * tileSize ints. The mapping stays valid after the file is closed.
+     * @param tileX the column of the tile.
+     * @param tileY the row of the tile.
+     * @return the mapping of the tile.
+     * @throws IOException if the tile cannot be mapped.
+     */
+    public MappedByteBuffer mapTile(int tileX, int tileY) throws IOException {
+        long tileBytes = (long) tileSize * tileSize * Integer.BYTES;
+        return channel.map(FileChannel.MapMode.READ_WRITE, dataOffset + tileIndex(tileX, tileY) * tileBytes, tileBytes);
+    }
+
+    /**
+     * Reads one tile into an array of tileSize * tileSize ints.
+     * @param tileX the column of the tile.
+     * @param tileY the row of the tile.
+     * @param tile the array to read into.
+     * @throws IOException if the tile cannot be read.
+     */
+    public void readTile(int tileX, int tileY, int[] tile) throws IOException {
+        mapTile(tileX, tileY).asIntBuffer().get(tile, 0, tileSize * tileSize);
+    }
+
+    /**
+     * Forces a written tile to disk and then marks it complete, so that it survives a crash and is skipped when the render is restarted.
+     * @param tileX the column of the tile.
+     * @param tileY the row of the tile.
+     * @param tile the mapping of the tile, as returned by mapTile.
+     */
+    public void completeTile(int tileX, int tileY, MappedByteBuffer tile) {
+        tile.force();
+        synchronized (tileTable) {
+            tileTable.put(tileIndex(tileX, tileY), (byte) 1);
+            tileTable.force();
+        }
+    }
+
+    /**
+     * @return true if the given tile has been completely written.
+     */
+    public boolean isTileComplete(int tileX, int tileY) {
+        synchronized (tileTable) {
+            return tileTable.get(tileIndex(tileX, tileY)) == 1;
+        }
+    }
+
+    /**
+     * @return the number of tiles that have been completely written.
+     */
+    public int getCompletedTileCount() {
+        int completed = 0;
+        synchronized (tileTable) {
+            for (int i = 0; i < tileTable.capacity(); i++) {
+                completed += tileTable.get(i);
+            }
+        }
+        return completed;
+    }
+
+    private int tileIndex(int tileX, int tileY) {
+        if (tileX < 0 || tileX >= tilesX || tileY < 0 || tileY >= tilesY) {
+            throw new IndexOutOfBoundsException("No tile (" + tileX + ", " + tileY + ") in a " + tilesX + "x" + tilesY + " tile grid");
+        }
+        return tileY * tilesX + tileX;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @return the number of pixels on the x-axis of the render.
+     */
+    public int getXResolution() {
+        return xResolution;
+    }
+
+    /**
+     * @return the number of pixels on the y-axis of the render.
+     */
+    public int getYResolution() {
+        return yResolution;
+    }
+
+    /**
+     * @return the edge length of the stored tiles in pixels.
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * @return the number of tile columns.
+     */
+    public int getTilesX() {
+        return tilesX;
+    }
+
+    /**
+     * @return the number of tile rows.
+     */
+    public int getTilesY() {
+        return tilesY;
+    }
+
+    /**
+     * @return the maximum number of iterations the render is calculated for.
+     */
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * @return the lower real bound of the render.
+     */
+    public double getMinReal() {
+        return minReal;
+    }
+
+    /**
+     * @return the upper real bound of the render.
+     */
+    public double getMaxReal() {
+        return maxReal;
+    }
+
+    /**
+     * @return the lower imaginary bound of the render.
+     */
+    public double getMinImaginary() {
+        return minImaginary;
+    }
+
+    /**
+     * @return the upper imaginary bound of the render.
+     */
+    public double getMaxImaginary() {
+        return maxImaginary;
+    }
+
+    /**
+     * @return the squared escape radius of the render.
+     */
+    public double getRadiusSquared() {
+        return radiusSquared;
+    }
+
+    /**
+     * @return the calculator configuration the render is calculated with.
+     */
+    public String getConfiguration() {
+        return configuration;
+    }
+}
@@ -0,0 +1,291 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The MandelbrotViewSession class keeps the current frame of an interactive viewer and updates it incrementally as the user pans and zooms,
+ * reusing every pixel of the previous frame that still lies on the new sampling grid.
+ *
+ * Pixels are placed on a fixed lattice: pixel (x, y) of the frame has C = (originReal + (offsetX + x) * realStep) + i * (originImaginary + (offsetY + y) * imaginaryStep).
+ * Panning by whole pixels only changes offsetX and offsetY, so the frame is shifted in place and only the newly exposed strips are calculated, at a cost
+ * proportional to the strips rather than the resolution. Zooming in or out by an integer factor keeps every old pixel that lands exactly on a lattice point
+ * of the new grid; zooming in by 2 reuses a quarter of the frame, zooming out by 2 reuses a quarter of the old frame's pixels as a quarter of the new one.
+ * After a zoom the lattice is re-anchored at the new top left pixel so that the offsets stay small however deep the user zooms.
+ *
+ * Example usage
+ *
+ * MandelbrotViewSession view = new MandelbrotViewSession(new MandelbrotCalculator(), 800, 800, MandelbrotCalculator.INITIAL_MIN_REAL, MandelbrotCalculator.INITIAL_MAX_REAL, MandelbrotCalculator.INITIAL_MIN_IMAGINARY, MandelbrotCalculator.INITIAL_MAX_IMAGINARY, MandelbrotCalculator.INITIAL_MAX_ITERATIONS, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+ * view.pan(40, 0);          // move the view 40 pixels to the right
+ * view.zoomIn(2, 400, 400); // zoom in around the centre pixel
+ * int[] frame = view.getFrame();
+ */
+public class MandelbrotViewSession {
+
+    private final MandelbrotCalculator calculator;
+    private final int xResolution;
+    private final int yResolution;
+    private double originReal;
+    private double originImaginary;
+    private final double radiusSquared;
+    private double realStep;
+    private double imaginaryStep;
+    private int offsetX = 0;
+    private int offsetY = 0;
+    private int maxIterations;
+
+    // The current frame, pixel (x, y) at frame[y * xResolution + x], and a spare buffer used while rebuilding it after a zoom
+    private int[] frame;
+    private int[] spare;
+    private long lastCalculatedPixels;
+
+    /**
+     * Constructs a session for the given initial view and renders its first frame.
+     * @param calculator the calculator used to calculate new pixels.
+     * @param xResolution the number of pixels on the x-axis in your GUI display.
+     * @param yResolution the number of pixels on the y-axis in your GUI display.
+     * @param minReal the lower real bound for the complex constant C (equivalent to lower bound X value in Mandelbrot set)
+     * @param maxReal the upper real bound for the complex constant C (equivalent to upper bound X value in Mandelbrot set)
+     * @param minImaginary the lower imaginary bound for the complex constant C (equivalent to lower bound Y value in Mandelbrot set)
+     * @param maxImaginary the upper imaginary bound for the complex constant C (equivalent to upper bound Y value in Mandelbrot set)
+     * @param maxIterations the maximum number of iterations to iterate the complex formula
+     * @param radiusSquared the squared of the radius to use when determining whether Z escaped the circle in the complex plain or remained bounded.
+     */
+    public MandelbrotViewSession(MandelbrotCalculator calculator, int xResolution, int yResolution, double minReal, double maxReal, double minImaginary, double maxImaginary, int maxIterations, double radiusSquared) {
+        if (calculator == null) {
+            throw new IllegalArgumentException("Calculator cannot be null");
+        }
+        if (xResolution <= 0 || yResolution <= 0) {
+            throw new IllegalArgumentException("Resolution must be positive: " + xResolution + "x" + yResolution);
+        }
+        this.calculator = calculator;
+        this.xResolution = xResolution;
+        this.yResolution = yResolution;
+        this.originReal = minReal;
+        this.originImaginary = minImaginary;
+        this.realStep = (maxReal - minReal)/xResolution;
+        this.imaginaryStep = (maxImaginary - minImaginary)/yResolution;
+        this.maxIterations = maxIterations;
+        this.radiusSquared = radiusSquared;
+        this.frame = new int[xResolution * yResolution];
+        this.spare = new int[xResolution * yResolution];
+        calculateStrip(0, 0, xResolution, yResolution);
+        lastCalculatedPixels = (long) xResolution * yResolution;
+    }
+
+    /**
+     * Moves the view by a whole number of pixels. The frame is shifted in place and only the newly exposed columns and rows are calculated.
+     * @param dx the number of pixels to move the view towards larger real values (negative to move the other way).
+     * @param dy the number of pixels to move the view towards larger imaginary values (negative to move the other way).
+     */
+    public void pan(int dx, int dy) {
+        if (Math.abs(dx) >= xResolution || Math.abs(dy) >= yResolution) {
+            offsetX += dx;
+            offsetY += dy;
+            calculateStrip(0, 0, xResolution, yResolution);
+            lastCalculatedPixels = (long) xResolution * yResolution;
+            return;
+        }
+
+        // New pixel (x, y) is old pixel (x + dx, y + dy); copy rows in the order that never overwrites a row before it has been read
+        int width = xResolution - Math.abs(dx);
+        int fromX = Math.max(dx, 0);
+        int toX = Math.max(-dx, 0);
+        if (dy >= 0) {
+            for (int y = 0; y < yResolution - dy; y++) {
+                System.arraycopy(frame, (y + dy) * xResolution + fromX, frame, y * xResolution + toX, width);
+            }
+        } else {
+            for (int y = yResolution - 1; y >= -dy; y--) {
+                System.arraycopy(frame, (y + dy) * xResolution + fromX, frame, y * xResolution + toX, width);
+            }
+        }
+        offsetX += dx;
+        offsetY += dy;
+
+        // Exposed rows across the full width, then exposed columns over the remaining rows
+        int rows = Math.abs(dy);
+        int rowsY = dy >= 0 ? yResolution - rows : 0;
+        int columns = Math.abs(dx);
+        int columnsX = dx >= 0 ? xResolution - columns : 0;
+        int columnsY = dy >= 0 ? 0 : rows;
+        calculateStrip(0, rowsY, xResolution, rows);
+        calculateStrip(columnsX, columnsY, columns, yResolution - rows);
+        lastCalculatedPixels = (long) rows * xResolution + (long) columns * (yResolution - rows);
+    }
+
+    /**
+     * Zooms in by an integer factor, keeping the point under pixel (centreX, centreY) in place. One pixel in factor x factor is reused from the current frame.
+     * @param factor the zoom factor, at least 1.
+     * @param centreX the x coordinate of the pixel to zoom around.
+     * @param centreY the y coordinate of the pixel to zoom around.
+     */
+    public void zoomIn(int factor, int centreX, int centreY) {
+        checkFactor(factor);
+        // Old lattice index i becomes new lattice index i * factor
+        long newOffsetX = (long) (offsetX + centreX) * factor - centreX;
+        long newOffsetY = (long) (offsetY + centreY) * factor - centreY;
+        realStep /= factor;
+        imaginaryStep /= factor;
+        rebuild(newOffsetX, newOffsetY, 1, factor);
+    }
+
+    /**
+     * Zooms out by an integer factor, keeping the point under pixel (centreX, centreY) in place to within half a pixel.
+     * Every new pixel whose point was in the current frame is reused.
+     * @param factor the zoom factor, at least 1.
+     * @param centreX the x coordinate of the pixel to zoom around.
+     * @param centreY the y coordinate of the pixel to zoom around.
+     */
+    public void zoomOut(int factor, int centreX, int centreY) {
+        checkFactor(factor);
+        // Old lattice index i * factor becomes new lattice index i, rounding the centre to the nearest new lattice point
+        long newOffsetX = Math.floorDiv(offsetX + centreX + factor / 2, factor) - centreX;
+        long newOffsetY = Math.floorDiv(offsetY + centreY + factor / 2, factor) - centreY;
+        realStep *= factor;
+        imaginaryStep *= factor;
+        rebuild(newOffsetX, newOffsetY, factor, 1);
+    }
+
+    /**
+     * Changes the maximum number of iterations, which recalculates the whole frame.
+     * @param maxIterations the maximum number of iterations to iterate the complex formula
+     */
+    public void setMaxIterations(int maxIterations) {
+        if (maxIterations != this.maxIterations) {
+            this.maxIterations = maxIterations;
+            calculateStrip(0, 0, xResolution, yResolution);
+            lastCalculatedPixels = (long) xResolution * yResolution;
+        }
+    }
+
+    /**
+     * Returns the current frame, with pixel [y][x] at index y * xResolution + x.
+     * The array is owned by the session and is updated in place, or replaced, by the next pan or zoom; it must not be modified.
+     * @return the current frame.
+     */
+    public int[] getFrame() {
+        return frame;
+    }
+
+    /**
+     * @return the current frame as a new 2-D array mandelbrotData[yResolution][xResolution], as returned by calcMandelbrotSet.
+     */
+    public int[][] toArray() {
+        int[][] mandelbrotData = new int[yResolution][xResolution];
+        for (int y = 0; y < yResolution; y++) {
+            System.arraycopy(frame, y * xResolution, mandelbrotData[y], 0, xResolution);
+        }
+        return mandelbrotData;
+    }
+
+    /**
+     * @return the number of pixels that had to be calculated for the most recent update of the frame.
+     */
+    public long getLastCalculatedPixels() {
+        return lastCalculatedPixels;
+    }
+
+    /**
+     * @return the real component of the left edge of the current view.
+     */
+    public double getMinReal() {
+        return originReal + offsetX * realStep;
+    }
+
+    /**
+     * @return the real component of the right edge of the current view.
+     */
+    public double getMaxReal() {
+        return originReal + (offsetX + xResolution) * realStep;
+    }
+
+    /**
+     * @return the imaginary component of the top edge of the current view.
+     */
+    public double getMinImaginary() {
+        return originImaginary + offsetY * imaginaryStep;
+    }
+
+    /**
+     * @return the imaginary component of the bottom edge of the current view.
+     */
+    public double getMaxImaginary() {
+        return originImaginary + (offsetY + yResolution) * imaginaryStep;
+    }
+
+    /**
+     * @return the maximum number of iterations the frame is calculated for.
+     */
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    private static void checkFactor(int factor) {
+        if (factor < 1) {
+            throw new IllegalArgumentException("Zoom factor must be at least 1: " + factor);
+        }
+    }
+
+    /**
+     * Calculates the given rectangle of the current frame.
+     */
+    private void calculateStrip(int x, int y, int width, int height) {
+        if (width > 0 && height > 0) {
+            calculator.calcRegion(frame, y * xResolution + x, xResolution, offsetX + x, offsetY + y, width, height,
+                    originReal, realStep, originImaginary, imaginaryStep, maxIterations, radiusSquared);
+        }
+    }
+
+    /**
+     * Builds the frame for new offsets after the step has been scaled, reusing old pixels on the new grid, then re-anchors the lattice at the new pixel (0, 0).
+     * New lattice index j corresponds to old lattice index j * numerator / denominator when that division is exact.
+     */
+    private void rebuild(long newOffsetX, long newOffsetY, int numerator, int denominator) {
+        int[] old = frame;
+        int[] next = spare;
+        int oldOffsetX = offsetX;
+        int oldOffsetY = offsetY;
+        // Pixel x of the new frame is calculated as the new origin plus x steps
+        double newMinReal = originReal + newOffsetX * realStep;
+        double newMinImaginary = originImaginary + newOffsetY * imaginaryStep;
+
+        LongAdder calculated = new LongAdder();
+        calculator.forEachTile(xResolution, yResolution, (x0, y0, width, height) -> {
+            long count = 0;
+            for (int y = y0; y < y0 + height; y++) {
+                long oldY = oldIndex(newOffsetY + y, numerator, denominator) - oldOffsetY;
+                boolean rowReusable = oldY >= 0 && oldY < yResolution;
+                double cImaginary = newMinImaginary + y * imaginaryStep;
+                int rowStart = y * xResolution;
+                int run = x0;
+                for (int x = x0; x < x0 + width; x++) {
+                    long oldX = rowReusable ? oldIndex(newOffsetX + x, numerator, denominator) - oldOffsetX : -1;
+                    if (oldX >= 0 && oldX < xResolution) {
+                        // Calculate the run of new pixels before this reused one
+                        calculator.calcRow(next, rowStart + run, run, x - run, newMinReal, realStep, cImaginary, maxIterations, radiusSquared);
+                        count += x - run;
+                        next[rowStart + x] = old[(int) oldY * xResolution + (int) oldX];
+                        run = x + 1;
+                    }
+                }
+                calculator.calcRow(next, rowStart + run, run, x0 + width - run, newMinReal, realStep, cImaginary, maxIterations, radiusSquared);
+                count += x0 + width - run;
+            }
+            calculated.add(count);
+        });
+
+        frame = next;
+        spare = old;
+        originReal = newMinReal;
+        originImaginary = newMinImaginary;
+        offsetX = 0;
+        offsetY = 0;
+        lastCalculatedPixels = calculated.sum();
+    }
+
+    /**
+     * @return the old lattice index for new lattice index j, or a large negative value if it does not fall on the old lattice.
+     */
+    private static long oldIndex(long j, int numerator, int denominator) {
+        long scaled = j * numerator;
+        return Math.floorMod(scaled, denominator) == 0 ? Math.floorDiv(scaled, denominator) : Long.MIN_VALUE / 2;
+    }
+}
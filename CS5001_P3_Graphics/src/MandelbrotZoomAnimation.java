@@ -0,0 +1,353 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.imageio.ImageIO;
+
+/**
+ * The MandelbrotZoomAnimation class renders the frames of a zoom video as a pipeline, so that calculating, colouring and encoding overlap.
+ *
+ * The zoom is described by a path: a centre, the width of the view in the first frame, a zoom factor applied every frame, and an iteration schedule
+ * which raises maxIterations by iterationsPerDoubling every time the view halves in width. Frame n shows a view of width startWidth / zoomPerFrame^n.
+ *
+ * The pipeline has four stages connected by bounded queues:
+ *   compute   several frames are calculated at once, so that cores left idle at the end of one frame are used by the next
+ *   colour    iteration values are mapped through the palette into the frame's image
+ *   encode    images are encoded as PNG, or as raw 24-bit RGB, on several threads
+ *   write     the calling thread writes encoded frames in frame order, holding back frames which finish early
+ * Frames are recycled once written, so memory use is bounded by the number of frames in flight rather than the length of the video.
+ *
+ * PNG frames are written as frame-00000.png, frame-00001.png, ... in the output directory. Raw frames are appended in order to a single frames.rgb file,
+ * which can be encoded directly, e.g. ffmpeg -f rawvideo -pix_fmt rgb24 -s 1920x1080 -r 30 -i frames.rgb zoom.mp4
+ *
+ * Views too deep for double precision bounds are passed to the calculator as BigDecimal bounds, so the calculator's precision setting decides how they are rendered.
+ *
+ * Example usage -- 600 frames zooming in by 2% a frame
+ *
+ * MandelbrotZoomAnimation animation = new MandelbrotZoomAnimation(mandelCalc, 1920, 1080, -0.743643887037151, 0.131825904205330, 3.0, 1.02, 100, 50);
+ * animation.render(Paths.get("zoom"), 600, MandelbrotZoomAnimation.Format.PNG);
+ */
+public class MandelbrotZoomAnimation {
+
+    /**
+     * The output formats. PNG writes one file per frame, RAW appends 24-bit RGB frames to one file.
+     */
+    public enum Format { PNG, RAW }
+
+    // Default pipeline settings
+    protected static final int DEFAULT_COMPUTE_THREADS = 2;
+    protected static final int DEFAULT_QUEUE_CAPACITY = 2;
+
+    private static final BigDecimal TWO = BigDecimal.valueOf(2);
+
+    private final MandelbrotCalculator calculator;
+    private final int xResolution;
+    private final int yResolution;
+    private final double centreReal;
+    private final double centreImaginary;
+    private final double startWidth;
+    private final double zoomPerFrame;
+    private final int baseIterations;
+    private final double iterationsPerDoubling;
+
+    private MandelbrotPalette palette = MandelbrotPalette.defaultPalette();
+    private int computeThreads = DEFAULT_COMPUTE_THREADS;
+    private int encodeThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    /**
+     * Constructs a zoom animation.
+     * @param calculator the calculator used to calculate frames, with its tiling, parallelism, backend, strategy and precision settings.
+     * @param xResolution the width of the frames in pixels.
+     * @param yResolution the height of the frames in pixels.
+     * @param centreReal the real component of the centre of the zoom.
+     * @param centreImaginary the imaginary component of the centre of the zoom.
+     * @param startWidth the width of the view on the real axis in the first frame.
+     * @param zoomPerFrame the factor by which the view is magnified from one frame to the next, e.g. 1.02.
+     * @param baseIterations maxIterations for the first frame.
+     * @param iterationsPerDoubling the number of iterations added to maxIterations each time the view halves in width.
+     */
+    public MandelbrotZoomAnimation(MandelbrotCalculator calculator, int xResolution, int yResolution, double centreReal, double centreImaginary, double startWidth, double zoomPerFrame, int baseIterations, double iterationsPerDoubling) {
+        if (calculator == null) {
+            throw new IllegalArgumentException("Calculator cannot be null");
+        }
+        if (xResolution < 1 || yResolution < 1) {
+            throw new IllegalArgumentException("Resolution must be at least 1x1: " + xResolution + "x" + yResolution);
+        }
+        if (!(startWidth > 0) || !(zoomPerFrame > 0)) {
+            throw new IllegalArgumentException("Width and zoom factor must be positive: " + startWidth + ", " + zoomPerFrame);
+        }
+        this.calculator = calculator;
+        this.xResolution = xResolution;
+        this.yResolution = yResolution;
+        this.centreReal = centreReal;
+        this.centreImaginary = centreImaginary;
+        this.startWidth = startWidth;
+        this.zoomPerFrame = zoomPerFrame;
+        this.baseIterations = baseIterations;
+        this.iterationsPerDoubling = iterationsPerDoubling;
+    }
+
+    /**
+     * @param frame the frame number, from 0.
+     * @return the width of the view on the real axis in the given frame.
+     */
+    public double getWidth(int frame) {
+        return startWidth / Math.pow(zoomPerFrame, frame);
+    }
+
+    /**
+     * @param frame the frame number, from 0.
+     * @return maxIterations for the given frame according to the iteration schedule.
+     */
+    public int getMaxIterations(int frame) {
+        double doublings = frame * Math.log(zoomPerFrame) / Math.log(2);
+        return Math.max(1, (int) Math.round(baseIterations + iterationsPerDoubling * doublings));
+    }
+
+    /**
+     * Renders frames 0 to frameCount - 1 and writes them to the output directory, returning once the last frame is written.
+     * @param directory the output directory, created if necessary.
+     * @param frameCount the number of frames to render.
+     * @param format the output format.
+     * @throws IOException if a frame cannot be encoded or written.
+     * @throws InterruptedException if the calling thread is interrupted, in which case the pipeline is stopped.
+     */
+    public void render(Path directory, int frameCount, Format format) throws IOException, InterruptedException {
+        Files.createDirectories(directory);
+        int framesInFlight = computeThreads + encodeThreads + 2 * queueCapacity + 2;
+        BlockingQueue<Frame> free = new ArrayBlockingQueue<>(framesInFlight);
+        for (int i = 0; i < framesInFlight; i++) {
+            free.add(new Frame());
+        }
+        BlockingQueue<Frame> computed = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Frame> coloured = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Frame> encoded = new ArrayBlockingQueue<>(framesInFlight);
+        AtomicInteger nextFrame = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        ExecutorService stages = Executors.newFixedThreadPool(computeThreads + 1 + encodeThreads, runnable -> {
+            Thread thread = new Thread(runnable, "mandelbrot-zoom-animation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (int i = 0; i < computeThreads; i++) {
+                stages.execute(stage(failure, () -> {
+                    while (true) {
+                        // Take a free frame before a frame number, so that the frame the writer is waiting for always has a buffer
+                        Frame frame = free.take();
+                        int n = nextFrame.getAndIncrement();
+                        if (n >= frameCount) {
+                            return;
+                        }
+                        compute(frame, n);
+                        computed.put(frame);
+                    }
+                }));
+            }
+            stages.execute(stage(failure, () -> {
+                while (true) {
+                    Frame frame = computed.take();
+                    palette.colour(frame.iterations, 0, frame.pixels, 0, frame.pixels.length, frame.maxIterations);
+                    coloured.put(frame);
+                }
+            }));
+            for (int i = 0; i < encodeThreads; i++) {
+                stages.execute(stage(failure, () -> {
+                    while (true) {
+                        Frame frame = coloured.take();
+                        encode(frame, format);
+                        encoded.put(frame);
+                    }
+                }));
+            }
+
+            // Write frames in order, holding back any that finish before their predecessors
+            Map<Integer, Frame> pending = new HashMap<>();
+            try (OutputStream raw = format == Format.RAW ? new BufferedOutputStream(Files.newOutputStream(directory.resolve("frames.rgb"))) : null) {
+                for (int written = 0; written < frameCount; ) {
+                    Frame frame = encoded.poll(100, TimeUnit.MILLISECONDS);
+                    Throwable cause = failure.get();
+                    if (cause != null) {
+                        throw cause instanceof UncheckedIOException ? ((UncheckedIOException) cause).getCause() : new IOException("Rendering frame failed", cause);
+                    }
+                    if (frame != null) {
+                        pending.put(frame.number, frame);
+                    }
+                    while ((frame = pending.remove(written)) != null) {
+                        if (raw != null) {
+                            raw.write(frame.encoded);
+                        } else {
+                            Files.write(directory.resolve(String.format("frame-%05d.png", frame.number)), frame.encoded);
+                        }
+                        frame.encoded = null;
+                        free.put(frame);
+                        written++;
+                    }
+                }
+            }
+        } finally {
+            stages.shutdownNow();
+        }
+    }
+
+    private void compute(Frame frame, int n) {
+        double width = getWidth(n);
+        double height = width * yResolution / xResolution;
+        frame.number = n;
+        frame.maxIterations = getMaxIterations(n);
+        if (MandelbrotCalculator.selectPrecision(width / xResolution) == MandelbrotCalculator.Precision.DOUBLE_DOUBLE) {
+            BigDecimal halfWidth = new BigDecimal(width).divide(TWO);
+            BigDecimal halfHeight = new BigDecimal(height).divide(TWO);
+            BigDecimal real = new BigDecimal(centreReal);
+            BigDecimal imaginary = new BigDecimal(centreImaginary);
+            int[][] mandelbrotData = calculator.calcMandelbrotSet(xResolution, yResolution, real.subtract(halfWidth), real.add(halfWidth), imaginary.subtract(halfHeight), imaginary.add(halfHeight), frame.maxIterations, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+            for (int y = 0; y < yResolution; y++) {
+                System.arraycopy(mandelbrotData[y], 0, frame.iterations, y * xResolution, xResolution);
+            }
+        } else {
+            calculator.calcMandelbrotSet(frame.iterations, 0, xResolution, xResolution, yResolution, centreReal - width / 2, centreReal + width / 2, centreImaginary - height / 2, centreImaginary + height / 2, frame.maxIterations, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+        }
+    }
+
+    private void encode(Frame frame, Format format) throws IOException {
+        if (format == Format.PNG) {
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            ImageIO.write(frame.image, "png", png);
+            frame.encoded = png.toByteArray();
+        } else {
+            byte[] rgb = new byte[frame.pixels.length * 3];
+            for (int i = 0; i < frame.pixels.length; i++) {
+                int argb = frame.pixels[i];
+                rgb[3 * i] = (byte) (argb >> 16);
+                rgb[3 * i + 1] = (byte) (argb >> 8);
+                rgb[3 * i + 2] = (byte) argb;
+            }
+            frame.encoded = rgb;
+        }
+    }
+
+    /**
+     * Body of a pipeline stage, which may block on its queues.
+     */
+    private interface StageBody {
+        void run() throws Exception;
+    }
+
+    /**
+     * Wraps a stage so that an interrupt ends it quietly and any other failure is recorded for the writer to report.
+     */
+    private static Runnable stage(AtomicReference<Throwable> failure, StageBody body) {
+        return () -> {
+            try {
+                body.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                failure.compareAndSet(null, new UncheckedIOException(e));
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        };
+    }
+
+    /**
+     * A frame in flight, with buffers which are reused for later frames once it is written.
+     */
+    private final class Frame {
+        final int[] iterations = new int[xResolution * yResolution];
+        final BufferedImage image = new BufferedImage(xResolution, yResolution, BufferedImage.TYPE_INT_RGB);
+        final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int number;
+        int maxIterations;
+        byte[] encoded;
+    }
+
+    /**
+     * Sets the palette used to colour frames.
+     * @param palette the palette.
+     */
+    public void setPalette(MandelbrotPalette palette) {
+        if (palette == null) {
+            throw new IllegalArgumentException("Palette cannot be null");
+        }
+        this.palette = palette;
+    }
+
+    /**
+     * @return the palette used to colour frames.
+     */
+    public MandelbrotPalette getPalette() {
+        return palette;
+    }
+
+    /**
+     * Sets the number of frames calculated at once. Each frame is also split into tiles according to the calculator's parallelism level.
+     * @param computeThreads the number of frames calculated at once, at least 1.
+     */
+    public void setComputeThreads(int computeThreads) {
+        if (computeThreads < 1) {
+            throw new IllegalArgumentException("Compute threads must be at least 1: " + computeThreads);
+        }
+        this.computeThreads = computeThreads;
+    }
+
+    /**
+     * @return the number of frames calculated at once.
+     */
+    public int getComputeThreads() {
+        return computeThreads;
+    }
+
+    /**
+     * Sets the number of threads encoding frames.
+     * @param encodeThreads the number of encoding threads, at least 1.
+     */
+    public void setEncodeThreads(int encodeThreads) {
+        if (encodeThreads < 1) {
+            throw new IllegalArgumentException("Encode threads must be at least 1: " + encodeThreads);
+        }
+        this.encodeThreads = encodeThreads;
+    }
+
+    /**
+     * @return the number of threads encoding frames.
+     */
+    public int getEncodeThreads() {
+        return encodeThreads;
+    }
+
+    /**
+     * Sets the capacity of the queues between the compute, colour and encode stages.
+     * @param queueCapacity the queue capacity in frames, at least 1.
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1: " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @return the capacity of the queues between the compute, colour and encode stages.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+}
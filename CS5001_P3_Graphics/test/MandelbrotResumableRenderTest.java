@@ -0,0 +1,71 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * JUnit tests checking that MandelbrotResumableRender gives the same frames as MandelbrotCalculator.calcMandelbrotSet, or refuses settings it cannot match.
+ *
+ * Compile against ../src and a JUnit 5 console standalone jar (e.g. the one in CS5002_P2_Testing/lib) and run with it, for example
+ *
+ * javac -d out ../src/*.java && javac -cp out:junit-platform-console-standalone.jar -d out *.java
+ * java -jar junit-platform-console-standalone.jar execute -cp out --select-class MandelbrotResumableRenderTest
+ */
+public class MandelbrotResumableRenderTest {
+
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 150;
+
+    private static MandelbrotResumableRender initialView(MandelbrotCalculator calculator) {
+        return new MandelbrotResumableRender(calculator, WIDTH, HEIGHT, MandelbrotCalculator.INITIAL_MIN_REAL, MandelbrotCalculator.INITIAL_MAX_REAL,
+                MandelbrotCalculator.INITIAL_MIN_IMAGINARY, MandelbrotCalculator.INITIAL_MAX_IMAGINARY, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+    }
+
+    private static int[][] fromScratch(MandelbrotCalculator calculator, int maxIterations) {
+        return calculator.calcMandelbrotSet(WIDTH, HEIGHT, MandelbrotCalculator.INITIAL_MIN_REAL, MandelbrotCalculator.INITIAL_MAX_REAL,
+                MandelbrotCalculator.INITIAL_MIN_IMAGINARY, MandelbrotCalculator.INITIAL_MAX_IMAGINARY, maxIterations, MandelbrotCalculator.DEFAULT_RADIUS_SQUARED);
+    }
+
+    @Test
+    public void resumedRenderMatchesRenderFromScratch() {
+        MandelbrotCalculator calculator = new MandelbrotCalculator();
+        MandelbrotResumableRender render = initialView(calculator);
+        assertArrayEquals(fromScratch(calculator, 50), render.render(50));
+        assertArrayEquals(fromScratch(calculator, 500), render.render(500));
+    }
+
+    @Test
+    public void floatPrecisionMatchesRenderFromScratch() {
+        MandelbrotCalculator calculator = new MandelbrotCalculator();
+        calculator.setPrecision(MandelbrotCalculator.Precision.FLOAT);
+        calculator.setCardioidCheck(true);
+        MandelbrotResumableRender render = initialView(calculator);
+        assertArrayEquals(fromScratch(calculator, 50), render.render(50));
+        assertArrayEquals(fromScratch(calculator, 500), render.render(500));
+    }
+
+    @Test
+    public void doubleDoublePrecisionIsRejected() {
+        MandelbrotCalculator calculator = new MandelbrotCalculator();
+        calculator.setPrecision(MandelbrotCalculator.Precision.DOUBLE_DOUBLE);
+        MandelbrotResumableRender render = initialView(calculator);
+        assertThrows(IllegalStateException.class, () -> render.render(50));
+    }
+
+    @Test
+    public void precisionChangeIsRejected() {
+        MandelbrotCalculator calculator = new MandelbrotCalculator();
+        MandelbrotResumableRender render = initialView(calculator);
+        render.render(50);
+        calculator.setPrecision(MandelbrotCalculator.Precision.FLOAT);
+        assertThrows(IllegalStateException.class, () -> render.render(500));
+    }
+
+    @Test
+    public void fractalKernelIsRejected() {
+        MandelbrotCalculator calculator = new MandelbrotCalculator();
+        calculator.setKernel(FractalKernel.julia(-0.8, 0.156));
+        MandelbrotResumableRender render = initialView(calculator);
+        assertThrows(IllegalStateException.class, () -> render.render(50));
+    }
+}
@@ -0,0 +1,139 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Escape-time kernel which iterates a full SIMD vector of adjacent pixels at once using the incubating Vector API.
+ * Each lane performs exactly the same floating point operations as MandelbrotCalculator.calcMandel, and lanes whose Z has escaped the radius are masked off,
+ * so the iteration counts are identical to the scalar kernel. The float version iterates twice as many lanes per vector and matches MandelbrotCalculator.calcMandelFloat.
+ *
+ * This class needs the jdk.incubator.vector module, so it is kept out of src and compiled separately, after src, onto the same class path:
+ *
+ * javac -d out src/*.java
+ * javac --add-modules jdk.incubator.vector -cp out -d out vector/*.java
+ *
+ * MandelbrotCalculator only loads it, by name, after checking that the module is present, and uses the scalar kernel if it is missing.
+ */
+final class MandelbrotVectorKernel implements MandelbrotRowKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final DoubleVector LANE_INDEX = DoubleVector.zero(SPECIES).addIndex(1);
+    private static final DoubleVector ONE = DoubleVector.broadcast(SPECIES, 1.0);
+
+    private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final FloatVector FLOAT_LANE_INDEX = FloatVector.zero(FLOAT_SPECIES).addIndex(1);
+    private static final FloatVector FLOAT_ONE = FloatVector.broadcast(FLOAT_SPECIES, 1.0f);
+
+    MandelbrotVectorKernel() {
+    }
+
+    /**
+     * Calculates the iteration values for every xStep-th pixel from x0 on one row, see MandelbrotCalculator.calcRow.
+     * If cardioidCheck is set, lanes inside the main cardioid or the period-2 bulb are given maxIterations and masked off before iterating.
+     * @return the number of pixels resolved by the cardioid and bulb test.
+     */
+    @Override
+    public int calcRow(int[] out, int offset, int x0, int xStep, int count, double minReal, double realStep, double cImaginary, int maxIterations, double radiusSquared, boolean cardioidCheck) {
+        int lanes = SPECIES.length();
+        int resolved = 0;
+        DoubleVector ci = DoubleVector.broadcast(SPECIES, cImaginary);
+        DoubleVector radius = DoubleVector.broadcast(SPECIES, radiusSquared);
+        double ci2 = cImaginary * cImaginary;
+
+        for (int i = 0; i < count; i += lanes) {
+            // cReal = minReal + x * realStep for each lane, in the same order as the scalar kernel; x is an exact integer in every lane
+            DoubleVector cr = LANE_INDEX.add(i).mul(xStep).add(x0).mul(realStep).add(minReal);
+            VectorMask<Double> active = SPECIES.indexInRange(i, count);
+            DoubleVector zr = DoubleVector.zero(SPECIES);
+            DoubleVector zi = DoubleVector.zero(SPECIES);
+            DoubleVector iterations = DoubleVector.zero(SPECIES);
+
+            if (cardioidCheck) {
+                // Same tests as MandelbrotCalculator.isInCardioidOrBulb
+                DoubleVector xq = cr.sub(0.25);
+                DoubleVector q = xq.mul(xq).add(ci2);
+                DoubleVector xb = cr.add(1.0);
+                VectorMask<Double> interior = q.mul(q.add(xq)).compare(VectorOperators.LE, 0.25 * ci2)
+                        .or(xb.mul(xb).add(ci2).compare(VectorOperators.LE, 0.0625))
+                        .and(active);
+                iterations = iterations.blend(maxIterations, interior);
+                active = active.andNot(interior);
+                resolved += interior.trueCount();
+            }
+
+            for (int n = 0; n < maxIterations && active.anyTrue(); n++) {
+                DoubleVector zr2 = zr.mul(zr);
+                DoubleVector zi2 = zi.mul(zi);
+                DoubleVector nzr = zr2.sub(zi2).add(cr);
+                DoubleVector nzi = zr.mul(2.0).mul(zi).add(ci);
+                zr = zr.blend(nzr, active);
+                zi = zi.blend(nzi, active);
+                iterations = iterations.add(ONE, active);
+                active = active.andNot(zr2.add(zi2).compare(VectorOperators.GT, radius));
+            }
+
+            int valid = Math.min(lanes, count - i);
+            for (int lane = 0; lane < valid; lane++) {
+                out[offset + i + lane] = (int) iterations.lane(lane);
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Single precision version of calcRow. C is formed as (x * (float) realStep) + (float) minReal, as in the scalar float kernel.
+     * Iteration counts are held in float lanes, so maxIterations must be at most 2^24.
+     * @return the number of pixels resolved by the cardioid and bulb test.
+     */
+    @Override
+    public int calcRowFloat(int[] out, int offset, int x0, int xStep, int count, double minReal, double realStep, double cImaginary, int maxIterations, double radiusSquared, boolean cardioidCheck) {
+        int lanes = FLOAT_SPECIES.length();
+        int resolved = 0;
+        float floatMinReal = (float) minReal;
+        float floatRealStep = (float) realStep;
+        float floatCImaginary = (float) cImaginary;
+        FloatVector ci = FloatVector.broadcast(FLOAT_SPECIES, floatCImaginary);
+        FloatVector radius = FloatVector.broadcast(FLOAT_SPECIES, (float) radiusSquared);
+        float ci2 = floatCImaginary * floatCImaginary;
+
+        for (int i = 0; i < count; i += lanes) {
+            FloatVector cr = FLOAT_LANE_INDEX.add(i).mul(xStep).add(x0).mul(floatRealStep).add(floatMinReal);
+            VectorMask<Float> active = FLOAT_SPECIES.indexInRange(i, count);
+            FloatVector zr = FloatVector.zero(FLOAT_SPECIES);
+            FloatVector zi = FloatVector.zero(FLOAT_SPECIES);
+            FloatVector iterations = FloatVector.zero(FLOAT_SPECIES);
+
+            if (cardioidCheck) {
+                // Same tests as MandelbrotCalculator.isInCardioidOrBulb(float, float)
+                FloatVector xq = cr.sub(0.25f);
+                FloatVector q = xq.mul(xq).add(ci2);
+                FloatVector xb = cr.add(1.0f);
+                VectorMask<Float> interior = q.mul(q.add(xq)).compare(VectorOperators.LE, 0.25f * ci2)
+                        .or(xb.mul(xb).add(ci2).compare(VectorOperators.LE, 0.0625f))
+                        .and(active);
+                iterations = iterations.blend(maxIterations, interior);
+                active = active.andNot(interior);
+                resolved += interior.trueCount();
+            }
+
+            for (int n = 0; n < maxIterations && active.anyTrue(); n++) {
+                FloatVector zr2 = zr.mul(zr);
+                FloatVector zi2 = zi.mul(zi);
+                FloatVector nzr = zr2.sub(zi2).add(cr);
+                FloatVector nzi = zr.mul(2.0f).mul(zi).add(ci);
+                zr = zr.blend(nzr, active);
+                zi = zi.blend(nzi, active);
+                iterations = iterations.add(FLOAT_ONE, active);
+                active = active.andNot(zr2.add(zi2).compare(VectorOperators.GT, radius));
+            }
+
+            int valid = Math.min(lanes, count - i);
+            for (int lane = 0; lane < valid; lane++) {
+                out[offset + i + lane] = (int) iterations.lane(lane);
+            }
+        }
+        return resolved;
+    }
+}
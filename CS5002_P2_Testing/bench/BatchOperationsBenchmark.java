@@ -0,0 +1,92 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import impl.Factory;
+import interfaces.IVendingMachine;
+
+/**
+ * JMH comparison of restocking and buying a basket one item per call against
+ * the batch calls, on the thread-safe machine.
+ *
+ * Each operation restocks four lanes with ITEMS items each and then buys
+ * them all back, so the machine ends every operation as it started.
+ *
+ * Compile and run as for LaneLookupBenchmark, e.g.
+ *
+ * java -cp out:jmh-core.jar:jopt-simple.jar:commons-math3.jar BatchOperationsBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchOperationsBenchmark {
+
+    private static final String[] LANES = {"A1", "A2", "B1", "B2"};
+
+    @Param({"40"})
+    public int items;
+
+    private IVendingMachine machine;
+    private final Map<String, Integer> manifest = new LinkedHashMap<>();
+
+    @Setup
+    public void setUp() throws Exception {
+        machine = Factory.getInstance().makeConcurrentVendingMachine();
+        for (String lane : LANES) {
+            machine.registerProduct(Factory.getInstance().makeVendingMachineProduct(lane, "Product " + lane, 100));
+            manifest.put(lane, items);
+        }
+    }
+
+    @Benchmark
+    public int singleItems() throws Exception {
+        for (String lane : LANES) {
+            for (int i = 0; i < items; i++) {
+                machine.addItem(lane);
+            }
+        }
+        for (String lane : LANES) {
+            for (int i = 0; i < items; i++) {
+                machine.buyItem(lane);
+            }
+        }
+        return machine.getTotalNumberOfItems();
+    }
+
+    @Benchmark
+    public int batch() throws Exception {
+        machine.restock(manifest);
+        machine.buyItems(manifest);
+        return machine.getTotalNumberOfItems();
+    }
+
+    /**
+     * Runs the benchmark.
+     * @param args JMH command line options
+     * @throws Exception if the options are invalid or the benchmark fails
+     */
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(BatchOperationsBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
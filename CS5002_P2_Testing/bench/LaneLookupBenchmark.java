@@ -0,0 +1,102 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import impl.Factory;
+import impl.LaneCodes;
+import interfaces.IProductRecord;
+import interfaces.IVendingMachine;
+
+/**
+ * JMH comparison of the lane lookup on every vending machine operation: the
+ * previous regex check plus String-keyed HashMap lookup, against the
+ * LaneCodes parser plus array lookup, and the resulting getNumberOfItems call.
+ *
+ * Compile against ../src and jmh-core with the JMH annotation processor, e.g.
+ *
+ * javac -cp jmh-core.jar:jmh-generator-annprocess.jar -d out $(find ../src/impl ../src/interfaces ../src/exceptions -name '*.java') *.java
+ * java -cp out:jmh-core.jar:jopt-simple.jar:commons-math3.jar LaneLookupBenchmark -prof gc
+ *
+ * With -prof gc the regex path shows its allocation per call, the parser path none.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LaneLookupBenchmark {
+
+    // The lookup as it was before LaneCodes
+    private static final Pattern VALID_LANE_CODE = Pattern.compile("^(?:[A-Za-z]\\d|\\d[A-Za-z])$");
+
+    private final String[] laneCodes = new String[64];
+    private final Map<String, IProductRecord> map = new HashMap<>();
+    private final IProductRecord[] table = new IProductRecord[LaneCodes.LANE_COUNT];
+    private IVendingMachine machine;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        machine = Factory.getInstance().makeVendingMachine();
+        for (int i = 0; i < laneCodes.length; i++) {
+            String laneCode = "" + (char) ('A' + i / 8) + (char) ('1' + i % 8);
+            laneCodes[i] = laneCode;
+            IProductRecord record = Factory.getInstance().makeProductRecord(Factory.getInstance().makeVendingMachineProduct(laneCode, "Product " + laneCode));
+            map.put(laneCode, record);
+            table[LaneCodes.index(laneCode)] = record;
+            machine.registerProduct(record.getProduct());
+        }
+    }
+
+    private String nextLaneCode() {
+        next = (next + 1) & (laneCodes.length - 1);
+        return laneCodes[next];
+    }
+
+    @Benchmark
+    public IProductRecord regexHashMap() {
+        String laneCode = nextLaneCode();
+        if (!VALID_LANE_CODE.matcher(laneCode).matches()) {
+            throw new IllegalArgumentException("Invalid lane code format: " + laneCode);
+        }
+        return map.get(laneCode);
+    }
+
+    @Benchmark
+    public IProductRecord parserArray() {
+        return table[LaneCodes.index(nextLaneCode())];
+    }
+
+    @Benchmark
+    public int machineGetNumberOfItems() throws Exception {
+        return machine.getNumberOfItems(nextLaneCode());
+    }
+
+    /**
+     * Runs the benchmark.
+     * @param args JMH command line options
+     * @throws Exception if the options are invalid or the benchmark fails
+     */
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(LaneLookupBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,302 @@
+package impl;
+
+import exceptions.ProductUnavailableException;
+import interfaces.IProductRecord;
+import interfaces.IVendingMachineProduct;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class represents a ProductRecord which can be updated by many threads
+ * at once without locking.
+ *
+ * The number available and the number of sales are packed into one
+ * AtomicLong (available in bits 32-62, sales in the low 31 bits), so a
+ * purchase checks the stock, takes an item and counts the sale in a single
+ * compare-and-set. Stock can therefore never be oversold, and the two counts
+ * are always read as a consistent pair.
+ *
+ * A basket reserves its items first, taking them from the number available
+ * without counting their sales, and commits the sales once every lane of the
+ * basket is reserved. Reserved items are held against the sales limit until
+ * they are committed or released, so a commit can never exceed it.
+ *
+ * When its lane is unregistered the record is retired by setting the top bit
+ * of the same AtomicLong. Retiring returns the final counts, and any later
+ * attempt to stock or buy from the record fails, so a machine can remove the
+ * lane's counts from its totals exactly once.
+ */
+public class ConcurrentProductRecord implements IProductRecord {
+
+    // Results of tryBuyItems and tryReserveItems
+    static final int BOUGHT = 1;
+    static final int UNAVAILABLE = 0;
+    static final int RETIRED = -1;
+
+    private static final long ONE_AVAILABLE = 1L << 32;
+    private static final long AVAILABLE_MASK = 0x7FFFFFFFL;
+    private static final long SALES_MASK = 0x7FFFFFFFL;
+    private static final long RETIRED_BIT = Long.MIN_VALUE;
+
+    private final IVendingMachineProduct product;
+    private final AtomicLong state = new AtomicLong();
+    // Items reserved whose sales have not been committed yet
+    private final AtomicLong reserved = new AtomicLong();
+
+    /**
+     * Constructs a new ConcurrentProductRecord for a given product.
+     * The record starts with zero items available and zero sales.
+     *
+     * @param product the product associated with this record
+     * @throws IllegalArgumentException if the product is null
+     */
+    public ConcurrentProductRecord(IVendingMachineProduct product) {
+        if (product == null) {
+            throw new IllegalArgumentException("Product cannot be null");
+        }
+        this.product = product;
+    }
+
+    @Override
+    public IVendingMachineProduct getProduct() {
+        return product;
+    }
+
+    @Override
+    public int getNumberOfSales() {
+        return sales(state.get());
+    }
+
+    @Override
+    public int getNumberAvailable() {
+        return available(state.get());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException if the record has been retired
+     */
+    @Override
+    public void addItem() {
+        addItems(1);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException if the record has been retired
+     */
+    @Override
+    public void buyItem() throws ProductUnavailableException {
+        buyItems(1);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException if the record has been retired, or would hold more than Integer.MAX_VALUE items
+     */
+    @Override
+    public void addItems(int count) {
+        if (!tryAddItems(count)) {
+            throw new IllegalStateException("Product record retired: " + product.getDescription());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException if the record has been retired, or would count more than Integer.MAX_VALUE sales
+     */
+    @Override
+    public void buyItems(int count) throws ProductUnavailableException {
+        int result = tryBuyItems(count);
+        if (result == UNAVAILABLE) {
+            throw new ProductUnavailableException("Product unavailable: " + product.getDescription());
+        }
+        if (result == RETIRED) {
+            throw new IllegalStateException("Product record retired: " + product.getDescription());
+        }
+    }
+
+    /**
+     * Adds count items unless the record has been retired.
+     *
+     * @return false if the record has been retired
+     * @throws IllegalArgumentException if count is negative
+     * @throws IllegalStateException if the record would hold more than Integer.MAX_VALUE items
+     */
+    boolean tryAddItems(int count) {
+        checkCount(count);
+        while (true) {
+            long current = state.get();
+            if ((current & RETIRED_BIT) != 0) {
+                return false;
+            }
+            if (available(current) + (long) count > AVAILABLE_MASK) {
+                throw new IllegalStateException("Too many items for product: " + product.getDescription());
+            }
+            if (state.compareAndSet(current, current + count * ONE_AVAILABLE)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Buys count items if that many are available and the record has not
+     * been retired, or none otherwise.
+     *
+     * @return BOUGHT, UNAVAILABLE or RETIRED
+     * @throws IllegalArgumentException if count is negative
+     * @throws IllegalStateException if the record would count more than Integer.MAX_VALUE sales
+     */
+    int tryBuyItems(int count) {
+        checkCount(count);
+        while (true) {
+            long current = state.get();
+            if ((current & RETIRED_BIT) != 0) {
+                return RETIRED;
+            }
+            if (available(current) < count) {
+                return UNAVAILABLE;
+            }
+            // Sales must never carry into the number available, even once the reserved items are committed
+            if (sales(current) + reserved.get() + count > SALES_MASK) {
+                throw new IllegalStateException("Too many sales for product: " + product.getDescription());
+            }
+            // Take the items and count the sales in the same update
+            if (state.compareAndSet(current, current - count * ONE_AVAILABLE + count)) {
+                return BOUGHT;
+            }
+        }
+    }
+
+    /**
+     * Takes count items without counting their sales if that many are
+     * available and the record has not been retired, or none otherwise.
+     * The items must then be committed with tryCommitItems or given back
+     * with tryReleaseItems.
+     *
+     * @return BOUGHT once the items are reserved, UNAVAILABLE or RETIRED
+     * @throws IllegalArgumentException if count is negative
+     * @throws IllegalStateException if the record would count more than Integer.MAX_VALUE sales
+     */
+    int tryReserveItems(int count) {
+        checkCount(count);
+        // Held against the sales limit before the stock is checked, so a purchase racing this one sees it
+        reserved.addAndGet(count);
+        int result = UNAVAILABLE;
+        try {
+            while (true) {
+                long current = state.get();
+                if ((current & RETIRED_BIT) != 0) {
+                    result = RETIRED;
+                    return result;
+                }
+                if (available(current) < count) {
+                    return result;
+                }
+                if (sales(current) + reserved.get() > SALES_MASK) {
+                    throw new IllegalStateException("Too many sales for product: " + product.getDescription());
+                }
+                if (state.compareAndSet(current, current - count * ONE_AVAILABLE)) {
+                    result = BOUGHT;
+                    return result;
+                }
+            }
+        } finally {
+            if (result != BOUGHT) {
+                reserved.addAndGet(-count);
+            }
+        }
+    }
+
+    /**
+     * Counts the sales of items taken by a successful tryReserveItems(count),
+     * unless the record has since been retired.
+     *
+     * @return false if the record has been retired, in which case its final
+     *         counts include neither the items nor their sales
+     */
+    boolean tryCommitItems(int count) {
+        try {
+            while (true) {
+                long current = state.get();
+                if ((current & RETIRED_BIT) != 0) {
+                    return false;
+                }
+                if (state.compareAndSet(current, current + count)) {
+                    return true;
+                }
+            }
+        } finally {
+            reserved.addAndGet(-count);
+        }
+    }
+
+    /**
+     * Undoes a successful tryAddItems(count), taking the items away again
+     * unless fewer than count are left or the record has been retired.
+     *
+     * @return false if the items could not be taken away
+     */
+    boolean tryRemoveItems(int count) {
+        while (true) {
+            long current = state.get();
+            if ((current & RETIRED_BIT) != 0 || available(current) < count) {
+                return false;
+            }
+            if (state.compareAndSet(current, current - count * ONE_AVAILABLE)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Undoes a successful tryReserveItems(count), putting the items back
+     * unless the record has since been retired.
+     *
+     * @return false if the record has been retired, in which case its final
+     *         counts do not include the items
+     */
+    boolean tryReleaseItems(int count) {
+        try {
+            while (true) {
+                long current = state.get();
+                if ((current & RETIRED_BIT) != 0) {
+                    return false;
+                }
+                if (state.compareAndSet(current, current + count * ONE_AVAILABLE)) {
+                    return true;
+                }
+            }
+        } finally {
+            reserved.addAndGet(-count);
+        }
+    }
+
+    /**
+     * Retires the record, so that every later update fails.
+     *
+     * @return the state before retiring, to be read with available and sales, or -1 if the record was already retired
+     */
+    long retire() {
+        long previous = state.getAndUpdate(current -> current | RETIRED_BIT);
+        return (previous & RETIRED_BIT) != 0 ? -1 : previous;
+    }
+
+    private static void checkCount(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Number of items cannot be negative: " + count);
+        }
+    }
+
+    static int available(long state) {
+        return (int) ((state >>> 32) & AVAILABLE_MASK);
+    }
+
+    static int sales(long state) {
+        return (int) (state & SALES_MASK);
+    }
+}
@@ -0,0 +1,295 @@
+package impl;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import exceptions.LaneCodeAlreadyInUseException;
+import exceptions.LaneCodeNotRegisteredException;
+import exceptions.ProductUnavailableException;
+import interfaces.IProductRecord;
+import interfaces.IVendingMachine;
+import interfaces.IVendingMachineProduct;
+
+/**
+ * This class represents a vending machine which can be stocked and sold from
+ * by many threads at once.
+ *
+ * Lanes are kept in an AtomicReferenceArray indexed by LaneCodes.index and
+ * each lane's stock and sales are kept in a ConcurrentProductRecord, so a
+ * purchase takes its item with a single compare-and-set and a lane can never
+ * be oversold. Purchases take no lock: after a purchase the sale is queued
+ * on the PopularityIndex without waiting, and applied by whichever thread
+ * next gets the index's lock. Registering and unregistering lanes hold that
+ * lock so the lane table and the index stay in step.
+ *
+ * The machine-wide totals are kept in LongAdders which every stocking,
+ * purchase and unregistration updates after its lane's record, so reading a
+ * total is O(1) and concurrent purchases from different lanes never contend
+ * on the same counter. Once the machine is quiet each total is exactly the
+ * sum over the registered lanes.
+ *
+ * A basket is bought without a lock by reserving each lane's items in turn,
+ * taking them from the lane's stock without counting their sales, and then
+ * counting every lane's sales once the whole basket is reserved. If a lane
+ * cannot supply its items, the lanes already reserved are given back and
+ * nothing is sold, although other threads may briefly find those items
+ * unavailable.
+ */
+public class ConcurrentVendingMachine implements IVendingMachine {
+
+    // Each lane's ProductRecord, indexed by LaneCodes.index of its lane code
+    private final AtomicReferenceArray<ConcurrentProductRecord> lanes = new AtomicReferenceArray<>(LaneCodes.LANE_COUNT);
+    private final AtomicInteger numberOfProducts = new AtomicInteger();
+
+    // Machine-wide totals, updated alongside each lane's record
+    private final LongAdder totalItems = new LongAdder();
+    private final LongAdder totalSales = new LongAdder();
+    private final LongAdder totalRevenue = new LongAdder();
+
+    // The lanes ranked by sales, updated after every purchase
+    private final PopularityIndex popularity = new PopularityIndex();
+
+    @Override
+    public void registerProduct(IVendingMachineProduct vendingMachineProduct)
+            throws LaneCodeAlreadyInUseException {
+
+        String laneCode = vendingMachineProduct.getLaneCode();
+        int index = LaneCodes.index(laneCode);
+
+        ConcurrentProductRecord record = new ConcurrentProductRecord(vendingMachineProduct);
+        popularity.lock();
+        try {
+            if (!lanes.compareAndSet(index, null, record)) {
+                throw new LaneCodeAlreadyInUseException("Lane code already registered: " + laneCode);
+            }
+            popularity.add(index, record, vendingMachineProduct);
+        } finally {
+            popularity.unlock();
+        }
+        numberOfProducts.incrementAndGet();
+    }
+
+    @Override
+    public void unregisterProduct(IVendingMachineProduct vendingMachineProduct)
+            throws LaneCodeNotRegisteredException {
+
+        String laneCode = vendingMachineProduct.getLaneCode();
+        int index = LaneCodes.index(laneCode);
+
+        popularity.lock();
+        try {
+            ConcurrentProductRecord record = lanes.getAndSet(index, null);
+            if (record == null) {
+                throw new LaneCodeNotRegisteredException("Lane code not registered: " + laneCode);
+            }
+            popularity.remove(index, record);
+            // Retiring makes any stocking or purchase still in progress fail, so the final counts are removed exactly once
+            long state = record.retire();
+            totalItems.add(-ConcurrentProductRecord.available(state));
+            totalSales.add(-ConcurrentProductRecord.sales(state));
+        } finally {
+            popularity.unlock();
+        }
+        numberOfProducts.decrementAndGet();
+    }
+
+    @Override
+    public void addItem(String laneCode) throws LaneCodeNotRegisteredException {
+        if (!getRecord(laneCode).tryAddItems(1)) {
+            throw new LaneCodeNotRegisteredException("Lane code not registered: " + laneCode);
+        }
+        totalItems.increment();
+    }
+
+    @Override
+    public void buyItem(String laneCode)
+            throws ProductUnavailableException, LaneCodeNotRegisteredException {
+        int index = LaneCodes.index(laneCode);
+        ConcurrentProductRecord record = getRecord(index, laneCode);
+        int result = record.tryBuyItems(1);
+        if (result == ConcurrentProductRecord.RETIRED) {
+            throw new LaneCodeNotRegisteredException("Lane code not registered: " + laneCode);
+        }
+        if (result == ConcurrentProductRecord.UNAVAILABLE) {
+            throw new ProductUnavailableException("Product unavailable: " + record.getProduct().getDescription());
+        }
+        totalItems.decrement();
+        totalSales.increment();
+        totalRevenue.add(record.getProduct().getPrice());
+        // A sale which completes after its lane was unregistered is ignored by the index
+        popularity.addSales(index, record, 1);
+    }
+
+    @Override
+    public void addItems(String laneCode, int count) throws LaneCodeNotRegisteredException {
+        if (!getRecord(laneCode).tryAddItems(count)) {
+            throw new LaneCodeNotRegisteredException("Lane code not registered: " + laneCode);
+        }
+        totalItems.add(count);
+    }
+
+    @Override
+    public void restock(Map<String, Integer> manifest) throws LaneCodeNotRegisteredException {
+        // Check the whole manifest before adding anything
+        ConcurrentProductRecord[] records = new ConcurrentProductRecord[manifest.size()];
+        int[] counts = new int[manifest.size()];
+        int n = 0;
+        for (Map.Entry<String, Integer> entry : manifest.entrySet()) {
+            records[n] = getRecord(entry.getKey());
+            counts[n] = checkCount(entry.getValue());
+            checkCapacity(records[n], counts[n++]);
+        }
+
+        for (int i = 0; i < n; i++) {
+            boolean added;
+            try {
+                added = records[i].tryAddItems(counts[i]);
+            } catch (IllegalStateException e) {
+                // Another restock filled the lane since the check, so take back the stock already added, as far as it is still there
+                for (int j = 0; j < i; j++) {
+                    if (records[j].tryRemoveItems(counts[j])) {
+                        totalItems.add(-counts[j]);
+                    }
+                }
+                throw e;
+            }
+            // A lane unregistered since the check is treated as stocked just before it was removed
+            if (added) {
+                totalItems.add(counts[i]);
+            }
+        }
+    }
+
+    @Override
+    public void buyItems(Map<String, Integer> basket)
+            throws ProductUnavailableException, LaneCodeNotRegisteredException {
+        int[] indexes = new int[basket.size()];
+        ConcurrentProductRecord[] records = new ConcurrentProductRecord[basket.size()];
+        int[] counts = new int[basket.size()];
+        int n = 0;
+        for (Map.Entry<String, Integer> entry : basket.entrySet()) {
+            indexes[n] = LaneCodes.index(entry.getKey());
+            records[n] = getRecord(indexes[n], entry.getKey());
+            counts[n++] = checkCount(entry.getValue());
+        }
+
+        // Reserve every lane's items, giving back the lanes already reserved if one fails
+        for (int i = 0; i < n; i++) {
+            int result;
+            try {
+                result = records[i].tryReserveItems(counts[i]);
+            } catch (IllegalStateException e) {
+                releaseItems(records, counts, i);
+                throw e;
+            }
+            if (result != ConcurrentProductRecord.BOUGHT) {
+                releaseItems(records, counts, i);
+                if (result == ConcurrentProductRecord.RETIRED) {
+                    throw new LaneCodeNotRegisteredException("Lane code not registered: " + records[i].getProduct().getLaneCode());
+                }
+                throw new ProductUnavailableException("Product unavailable: " + records[i].getProduct().getDescription());
+            }
+        }
+
+        // Count the sales only now that the whole basket is reserved
+        for (int i = 0; i < n; i++) {
+            totalItems.add(-counts[i]);
+            // A lane unregistered since it was reserved is treated as sold from just before it was removed
+            if (records[i].tryCommitItems(counts[i])) {
+                totalSales.add(counts[i]);
+            }
+            totalRevenue.add((long) records[i].getProduct().getPrice() * counts[i]);
+            popularity.addSales(indexes[i], records[i], counts[i]);
+        }
+    }
+
+    @Override
+    public int getNumberOfProducts() {
+        return numberOfProducts.get();
+    }
+
+    @Override
+    public int getTotalNumberOfItems() {
+        return (int) totalItems.sum();
+    }
+
+    @Override
+    public int getTotalNumberOfSales() {
+        return (int) totalSales.sum();
+    }
+
+    @Override
+    public long getTotalRevenue() {
+        return totalRevenue.sum();
+    }
+
+    @Override
+    public int getNumberOfItems(String laneCode) throws LaneCodeNotRegisteredException {
+        return getRecord(laneCode).getNumberAvailable();
+    }
+
+    @Override
+    public int getNumberOfSales(String laneCode) throws LaneCodeNotRegisteredException {
+        return getRecord(laneCode).getNumberOfSales();
+    }
+
+    @Override
+    public IVendingMachineProduct getMostPopular() throws LaneCodeNotRegisteredException {
+        IVendingMachineProduct mostPopular = popularity.mostPopular();
+        if (mostPopular == null) {
+            throw new LaneCodeNotRegisteredException("No products registered in machine");
+        }
+        return mostPopular;
+    }
+
+    @Override
+    public List<IVendingMachineProduct> getTopSellers(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Number of top sellers cannot be negative: " + n);
+        }
+        return popularity.top(n);
+    }
+
+    /**
+     * Validates the lane code and returns its record.
+     */
+    private ConcurrentProductRecord getRecord(String laneCode) throws LaneCodeNotRegisteredException {
+        return getRecord(LaneCodes.index(laneCode), laneCode);
+    }
+
+    private ConcurrentProductRecord getRecord(int index, String laneCode) throws LaneCodeNotRegisteredException {
+        ConcurrentProductRecord record = lanes.get(index);
+        if (record == null) {
+            throw new LaneCodeNotRegisteredException("Lane code not registered: " + laneCode);
+        }
+        return record;
+    }
+
+    /**
+     * Gives back the items reserved from the first n lanes of a basket.
+     */
+    private void releaseItems(ConcurrentProductRecord[] records, int[] counts, int n) {
+        for (int j = 0; j < n; j++) {
+            if (!records[j].tryReleaseItems(counts[j])) {
+                // The lane was retired without the reserved items, so they leave the machine with it
+                totalItems.add(-counts[j]);
+            }
+        }
+    }
+
+    private static void checkCapacity(IProductRecord record, int count) {
+        if (record.getNumberAvailable() + (long) count > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many items for product: " + record.getProduct().getDescription());
+        }
+    }
+
+    private static int checkCount(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Number of items cannot be negative: " + count);
+        }
+        return count;
+    }
+}
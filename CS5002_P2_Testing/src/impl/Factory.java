@@ -33,6 +33,11 @@ public final class Factory implements IFactory {
         return new VendingMachineProduct(laneCode, description);
     }
 
+    @Override
+    public IVendingMachineProduct makeVendingMachineProduct(String laneCode, String description, int price) {
+        return new VendingMachineProduct(laneCode, description, price);
+    }
+
     @Override
     public IProductRecord makeProductRecord(IVendingMachineProduct vendingMachineProduct) {
         return new ProductRecord(vendingMachineProduct);
@@ -42,4 +47,9 @@ public final class Factory implements IFactory {
     public IVendingMachine makeVendingMachine() {
         return new VendingMachine();
     }
+
+    @Override
+    public IVendingMachine makeConcurrentVendingMachine() {
+        return new ConcurrentVendingMachine();
+    }
 }
@@ -0,0 +1,93 @@
+package impl;
+
+/**
+ * This class parses lane codes into small dense indices, so that a vending
+ * machine can keep its lanes in a flat array instead of a String-keyed map.
+ *
+ * A lane code is one ASCII letter and one digit in either order, e.g. A1 or
+ * 3D. Codes differing in case or order are different lanes, as they always
+ * have been, giving 52 letters x 10 digits x 2 orders = LANE_COUNT codes.
+ * Parsing looks only at the two characters and allocates nothing.
+ */
+public final class LaneCodes {
+
+    // The number of codes in each order; digit-first codes follow the letter-first ones
+    private static final int CODES_PER_ORDER = 52 * 10;
+
+    /**
+     * The number of distinct lane codes, and so the size of a lane table.
+     */
+    public static final int LANE_COUNT = 2 * CODES_PER_ORDER;
+
+    private LaneCodes() {
+        // static helpers only
+    }
+
+    /**
+     * Returns the index of a lane code, or -1 if it is not a valid lane code.
+     *
+     * @param laneCode the lane code, may be null
+     * @return the index in [0, LANE_COUNT), or -1
+     */
+    public static int indexOf(String laneCode) {
+        if (laneCode == null || laneCode.length() != 2) {
+            return -1;
+        }
+        char first = laneCode.charAt(0);
+        char second = laneCode.charAt(1);
+        int letter = letterIndex(first);
+        if (letter >= 0 && second >= '0' && second <= '9') {
+            return letter * 10 + (second - '0');
+        }
+        letter = letterIndex(second);
+        if (letter >= 0 && first >= '0' && first <= '9') {
+            return CODES_PER_ORDER + letter * 10 + (first - '0');
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of a lane code, validating that it follows the
+     * correct format (one letter and one number).
+     *
+     * @param laneCode the lane code
+     * @return the index in [0, LANE_COUNT)
+     * @throws IllegalArgumentException if the lane code is not valid
+     */
+    public static int index(String laneCode) {
+        int index = indexOf(laneCode);
+        if (index < 0) {
+            throw new IllegalArgumentException(
+                "Invalid lane code format: " + laneCode +
+                ". Lane codes must contain exactly one letter and one number (e.g. A1 or 3D)."
+            );
+        }
+        return index;
+    }
+
+    /**
+     * Returns the lane code with the given index.
+     *
+     * @param index the index, in [0, LANE_COUNT)
+     * @return the lane code
+     */
+    public static String laneCode(int index) {
+        if (index < 0 || index >= LANE_COUNT) {
+            throw new IllegalArgumentException("Invalid lane index: " + index);
+        }
+        int slot = index % CODES_PER_ORDER;
+        char letter = (char) (slot / 10 < 26 ? 'A' + slot / 10 : 'a' + slot / 10 - 26);
+        char digit = (char) ('0' + slot % 10);
+        return index < CODES_PER_ORDER ? "" + letter + digit : "" + digit + letter;
+    }
+
+    private static int letterIndex(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        }
+        if (c >= 'a' && c <= 'z') {
+            return 26 + c - 'a';
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,317 @@
+package impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import interfaces.IVendingMachineProduct;
+
+/**
+ * This class keeps the lanes of a vending machine ranked by number of sales,
+ * so that the most popular product and the top sellers can be read without
+ * scanning every lane.
+ *
+ * Lanes are grouped into buckets of equal sales, and the buckets are kept in
+ * a doubly linked list in ascending order of sales (as in an LFU cache). A
+ * sale moves its lane into the next bucket up, creating it if needed and
+ * dropping its old bucket if that becomes empty, which is O(1). The most
+ * popular lane is the first lane of the highest bucket, and the top N lanes
+ * are read by walking down from there, which is O(N).
+ *
+ * Sales are not applied under a lock by the buying thread. addSales pushes
+ * the update onto a lock-free stack, and once BATCH updates are queued the
+ * buyer which pushed the last one applies the whole batch if tryLock
+ * succeeds, so purchases never wait for each other or for a reader. Reads,
+ * and adding or removing lanes, take the lock and apply the queued updates
+ * first, so they always see every sale recorded before them. An index used
+ * by a single thread records sales with addSalesDirectly instead, which
+ * applies them at once without queueing or locking.
+ *
+ * A thread-safe machine holds the index's lock (see lock and unlock) while it
+ * registers or unregisters a lane, so that the lane table and the index
+ * always agree on which lanes exist. Each lane is registered with the record
+ * it tracks, and updates for any other record, e.g. a sale completed just
+ * after its lane was unregistered, are ignored.
+ */
+final class PopularityIndex {
+
+    private final Entry[] entries = new Entry[LaneCodes.LANE_COUNT];
+    private Bucket lowest;
+    private Bucket highest;
+
+    // Number of queued updates at which a buyer tries to apply them
+    private static final int BATCH = 64;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Sales recorded by addSales and not yet applied, most recent first
+    private final AtomicReference<Update> pending = new AtomicReference<>();
+
+    /**
+     * Acquires the index's lock, e.g. to register a lane in the machine and
+     * the index together. The lock is reentrant.
+     */
+    void lock() {
+        lock.lock();
+    }
+
+    /**
+     * Releases the index's lock.
+     */
+    void unlock() {
+        lock.unlock();
+    }
+
+    /**
+     * Adds a lane with no sales.
+     */
+    void add(int lane, Object record, IVendingMachineProduct product) {
+        lock.lock();
+        try {
+            applyPending();
+            Entry entry = new Entry(record, product);
+            entries[lane] = entry;
+            if (lowest != null && lowest.count == 0) {
+                lowest.addFirst(entry);
+            } else {
+                insertBelow(lowest, 0).addFirst(entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a lane, if it still tracks the given record.
+     */
+    void remove(int lane, Object record) {
+        lock.lock();
+        try {
+            applyPending();
+            Entry entry = entries[lane];
+            if (entry == null || entry.record != record) {
+                return;
+            }
+            entries[lane] = null;
+            unlink(entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records sales in a lane, if it still tracks the given record. The sales
+     * are queued, and applied now only if the lock is free.
+     */
+    void addSales(int lane, Object record, long sales) {
+        if (sales <= 0) {
+            return;
+        }
+        Update update = new Update(lane, record, sales);
+        Update head;
+        do {
+            head = pending.get();
+            update.next = head;
+            update.depth = head == null ? 1 : head.depth + 1;
+        } while (!pending.compareAndSet(head, update));
+
+        // If the lock is busy, a later buyer or the next read applies the queue
+        if (update.depth >= BATCH && lock.tryLock()) {
+            try {
+                applyPending();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Records sales in a lane, if it still tracks the given record, applying
+     * them at once. Only for an index which is never used by more than one
+     * thread, such as VendingMachine's.
+     */
+    void addSalesDirectly(int lane, Object record, long sales) {
+        if (sales > 0) {
+            apply(lane, record, sales);
+        }
+    }
+
+    /**
+     * Applies every queued update. Must be called with the lock held.
+     */
+    private void applyPending() {
+        for (Update update = pending.getAndSet(null); update != null; update = update.next) {
+            apply(update.lane, update.record, update.sales);
+        }
+    }
+
+    private void apply(int lane, Object record, long sales) {
+        Entry entry = entries[lane];
+        if (entry == null || entry.record != record) {
+            return;
+        }
+        Bucket from = entry.bucket;
+        long target = from.count + sales;
+        Bucket below = from;
+        while (below.higher != null && below.higher.count <= target) {
+            below = below.higher;
+        }
+        Bucket to = below.count == target ? below : insertAbove(below, target);
+        unlink(entry);
+        to.addFirst(entry);
+    }
+
+    /**
+     * @return the product with the most sales, or null if there are no lanes
+     */
+    IVendingMachineProduct mostPopular() {
+        lock.lock();
+        try {
+            applyPending();
+            return highest == null ? null : highest.first.product;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return up to n products in descending order of sales
+     */
+    List<IVendingMachineProduct> top(int n) {
+        lock.lock();
+        try {
+            applyPending();
+            List<IVendingMachineProduct> products = new ArrayList<>(Math.min(n, 64));
+            for (Bucket bucket = highest; bucket != null && products.size() < n; bucket = bucket.lower) {
+                for (Entry entry = bucket.first; entry != null && products.size() < n; entry = entry.next) {
+                    products.add(entry.product);
+                }
+            }
+            return products;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts a new bucket directly above the given one, or as the only bucket if it is null.
+     */
+    private Bucket insertAbove(Bucket bucket, long count) {
+        Bucket inserted = new Bucket(count);
+        inserted.lower = bucket;
+        inserted.higher = bucket == null ? null : bucket.higher;
+        link(inserted);
+        return inserted;
+    }
+
+    /**
+     * Inserts a new bucket directly below the given one, or as the only bucket if it is null.
+     */
+    private Bucket insertBelow(Bucket bucket, long count) {
+        Bucket inserted = new Bucket(count);
+        inserted.higher = bucket;
+        inserted.lower = bucket == null ? null : bucket.lower;
+        link(inserted);
+        return inserted;
+    }
+
+    private void link(Bucket bucket) {
+        if (bucket.lower != null) {
+            bucket.lower.higher = bucket;
+        } else {
+            lowest = bucket;
+        }
+        if (bucket.higher != null) {
+            bucket.higher.lower = bucket;
+        } else {
+            highest = bucket;
+        }
+    }
+
+    /**
+     * Removes an entry from its bucket, dropping the bucket if it becomes empty.
+     */
+    private void unlink(Entry entry) {
+        Bucket bucket = entry.bucket;
+        if (entry.previous != null) {
+            entry.previous.next = entry.next;
+        } else {
+            bucket.first = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.previous = entry.previous;
+        }
+        entry.bucket = null;
+        entry.previous = null;
+        entry.next = null;
+        if (bucket.first == null) {
+            if (bucket.lower != null) {
+                bucket.lower.higher = bucket.higher;
+            } else {
+                lowest = bucket.higher;
+            }
+            if (bucket.higher != null) {
+                bucket.higher.lower = bucket.lower;
+            } else {
+                highest = bucket.lower;
+            }
+        }
+    }
+
+    /**
+     * The lanes with a given number of sales.
+     */
+    private static final class Bucket {
+        final long count;
+        Bucket lower;
+        Bucket higher;
+        Entry first;
+
+        Bucket(long count) {
+            this.count = count;
+        }
+
+        void addFirst(Entry entry) {
+            entry.bucket = this;
+            entry.next = first;
+            if (first != null) {
+                first.previous = entry;
+            }
+            first = entry;
+        }
+    }
+
+    /**
+     * Sales queued by addSales.
+     */
+    private static final class Update {
+        final int lane;
+        final Object record;
+        final long sales;
+        Update next;
+        // The number of updates queued, including this one
+        int depth;
+
+        Update(int lane, Object record, long sales) {
+            this.lane = lane;
+            this.record = record;
+            this.sales = sales;
+        }
+    }
+
+    /**
+     * A lane in the index.
+     */
+    private static final class Entry {
+        final Object record;
+        final IVendingMachineProduct product;
+        Bucket bucket;
+        Entry previous;
+        Entry next;
+
+        Entry(Object record, IVendingMachineProduct product) {
+            this.record = record;
+            this.product = product;
+        }
+    }
+}
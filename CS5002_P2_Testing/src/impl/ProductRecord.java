@@ -56,16 +56,38 @@ public class ProductRecord implements IProductRecord {
 
     @Override
     public void addItem() {
-        numberAvailable++;
+        addItems(1);
     }
 
     @Override
     public void buyItem() throws ProductUnavailableException {
-        if (numberAvailable <= 0) {
+        buyItems(1);
+    }
+
+    @Override
+    public void addItems(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Number of items cannot be negative: " + count);
+        }
+        if (numberAvailable + (long) count > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many items for product: " + product.getDescription());
+        }
+        numberAvailable += count;
+    }
+
+    @Override
+    public void buyItems(int count) throws ProductUnavailableException {
+        if (count < 0) {
+            throw new IllegalArgumentException("Number of items cannot be negative: " + count);
+        }
+        if (numberAvailable < count) {
             throw new ProductUnavailableException("Product unavailable: " + product.getDescription());
         }
-        numberAvailable--;
-        numberOfSales++;
+        if (numberOfSales + (long) count > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many sales for product: " + product.getDescription());
+        }
+        numberAvailable -= count;
+        numberOfSales += count;
     }
 
     /**
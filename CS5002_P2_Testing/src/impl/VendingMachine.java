@@ -1,9 +1,7 @@
 package impl;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Comparator;
-import java.util.regex.Pattern;
 
 import exceptions.LaneCodeAlreadyInUseException;
 import exceptions.LaneCodeNotRegisteredException;
@@ -18,37 +16,33 @@ import interfaces.IProductRecord;
  */
 public class VendingMachine implements IVendingMachine {
 
-    // Each lane code maps to its ProductRecord
-    private final Map<String, IProductRecord> lanes = new HashMap<>();
+    // Each lane's ProductRecord, indexed by LaneCodes.index of its lane code
+    private final IProductRecord[] lanes = new IProductRecord[LaneCodes.LANE_COUNT];
+    private int numberOfProducts;
 
-    // Regex pattern: must contain one letter and one digit in any order (e.g. A1 or 3B)
-    private static final Pattern VALID_LANE_CODE = Pattern.compile("^(?:[A-Za-z]\\d|\\d[A-Za-z])$");
+    // Machine-wide totals, updated alongside each lane's record
+    private int totalItems;
+    private int totalSales;
+    private long totalRevenue;
 
-    /**
-     * Validates that the lane code follows the correct format (one letter and one number).
-     */
-    private void validateLaneCodeFormat(String laneCode) {
-        if (laneCode == null || !VALID_LANE_CODE.matcher(laneCode).matches()) {
-            throw new IllegalArgumentException(
-                "Invalid lane code format: " + laneCode + 
-                ". Lane codes must contain exactly one letter and one number (e.g. A1 or 3D)."
-            );
-        }
-    }
+    // The lanes ranked by sales, updated on every purchase
+    private final PopularityIndex popularity = new PopularityIndex();
 
     @Override
     public void registerProduct(IVendingMachineProduct vendingMachineProduct)
             throws LaneCodeAlreadyInUseException {
 
         String laneCode = vendingMachineProduct.getLaneCode();
-        validateLaneCodeFormat(laneCode);
+        int index = LaneCodes.index(laneCode);
 
-        if (lanes.containsKey(laneCode)) {
+        if (lanes[index] != null) {
             throw new LaneCodeAlreadyInUseException("Lane code already registered: " + laneCode);
         }
 
         IProductRecord record = new ProductRecord(vendingMachineProduct);
-        lanes.put(laneCode, record);
+        lanes[index] = record;
+        popularity.add(index, record, vendingMachineProduct);
+        numberOfProducts++;
     }
 
     @Override
@@ -56,83 +50,163 @@ public class VendingMachine implements IVendingMachine {
             throws LaneCodeNotRegisteredException {
 
         String laneCode = vendingMachineProduct.getLaneCode();
-        validateLaneCodeFormat(laneCode);
+        int index = LaneCodes.index(laneCode);
+
+        IProductRecord record = getRecord(index, laneCode);
+        popularity.remove(index, record);
+        totalItems -= record.getNumberAvailable();
+        totalSales -= record.getNumberOfSales();
+        lanes[index] = null;
+        numberOfProducts--;
+    }
 
-        if (!lanes.containsKey(laneCode)) {
-            throw new LaneCodeNotRegisteredException("Lane code not registered: " + laneCode);
-        }
+    @Override
+    public void addItem(String laneCode) throws LaneCodeNotRegisteredException {
+        IProductRecord record = getRecord(laneCode);
+        record.addItem();
+        totalItems++;
+    }
 
-        lanes.remove(laneCode);
+    @Override
+    public void buyItem(String laneCode)
+            throws ProductUnavailableException, LaneCodeNotRegisteredException {
+        int index = LaneCodes.index(laneCode);
+        IProductRecord record = getRecord(index, laneCode);
+        record.buyItem();
+        totalItems--;
+        totalSales++;
+        totalRevenue += record.getProduct().getPrice();
+        popularity.addSalesDirectly(index, record, 1);
     }
 
     @Override
-    public void addItem(String laneCode) throws LaneCodeNotRegisteredException {
-        validateLaneCodeFormat(laneCode);
+    public void addItems(String laneCode, int count) throws LaneCodeNotRegisteredException {
+        IProductRecord record = getRecord(laneCode);
+        record.addItems(count);
+        totalItems += count;
+    }
 
-        IProductRecord record = lanes.get(laneCode);
-        if (record == null) {
-            throw new LaneCodeNotRegisteredException("Lane code not registered: " + laneCode);
+    @Override
+    public void restock(Map<String, Integer> manifest) throws LaneCodeNotRegisteredException {
+        // Check the whole manifest before adding anything
+        IProductRecord[] records = new IProductRecord[manifest.size()];
+        int[] counts = new int[manifest.size()];
+        int n = 0;
+        for (Map.Entry<String, Integer> entry : manifest.entrySet()) {
+            records[n] = getRecord(entry.getKey());
+            counts[n] = checkCount(entry.getValue());
+            checkCapacity(records[n], counts[n++]);
+        }
+
+        for (int i = 0; i < n; i++) {
+            records[i].addItems(counts[i]);
+            totalItems += counts[i];
         }
-        record.addItem();
     }
 
     @Override
-    public void buyItem(String laneCode)
+    public void buyItems(Map<String, Integer> basket)
             throws ProductUnavailableException, LaneCodeNotRegisteredException {
-        validateLaneCodeFormat(laneCode);
+        // Check the whole basket, including the stock, before buying anything
+        int[] indexes = new int[basket.size()];
+        int[] counts = new int[basket.size()];
+        int n = 0;
+        for (Map.Entry<String, Integer> entry : basket.entrySet()) {
+            int index = LaneCodes.index(entry.getKey());
+            IProductRecord record = getRecord(index, entry.getKey());
+            int count = checkCount(entry.getValue());
+            if (record.getNumberAvailable() < count) {
+                throw new ProductUnavailableException("Product unavailable: " + record.getProduct().getDescription());
+            }
+            if (record.getNumberOfSales() + (long) count > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Too many sales for product: " + record.getProduct().getDescription());
+            }
+            indexes[n] = index;
+            counts[n++] = count;
+        }
 
-        IProductRecord record = lanes.get(laneCode);
-        if (record == null) {
-            throw new LaneCodeNotRegisteredException("Lane code not registered: " + laneCode);
+        for (int i = 0; i < n; i++) {
+            IProductRecord record = lanes[indexes[i]];
+            record.buyItems(counts[i]);
+            totalItems -= counts[i];
+            totalSales += counts[i];
+            totalRevenue += (long) record.getProduct().getPrice() * counts[i];
+            popularity.addSalesDirectly(indexes[i], record, counts[i]);
         }
-        record.buyItem();
     }
 
     @Override
     public int getNumberOfProducts() {
-        return lanes.size();
+        return numberOfProducts;
     }
 
     @Override
     public int getTotalNumberOfItems() {
-        int total = 0;
-        for (IProductRecord record : lanes.values()) {
-            total += record.getNumberAvailable();
-        }
-        return total;
+        return totalItems;
+    }
+
+    @Override
+    public int getTotalNumberOfSales() {
+        return totalSales;
+    }
+
+    @Override
+    public long getTotalRevenue() {
+        return totalRevenue;
     }
 
     @Override
     public int getNumberOfItems(String laneCode) throws LaneCodeNotRegisteredException {
-        validateLaneCodeFormat(laneCode);
+        return getRecord(laneCode).getNumberAvailable();
+    }
 
-        IProductRecord record = lanes.get(laneCode);
-        if (record == null) {
-            throw new LaneCodeNotRegisteredException("Lane code not registered: " + laneCode);
+    @Override
+    public int getNumberOfSales(String laneCode) throws LaneCodeNotRegisteredException {
+        return getRecord(laneCode).getNumberOfSales();
+    }
+
+    @Override
+    public IVendingMachineProduct getMostPopular() throws LaneCodeNotRegisteredException {
+        IVendingMachineProduct mostPopular = popularity.mostPopular();
+        if (mostPopular == null) {
+            throw new LaneCodeNotRegisteredException("No products registered in machine");
         }
-        return record.getNumberAvailable();
+        return mostPopular;
     }
 
     @Override
-    public int getNumberOfSales(String laneCode) throws LaneCodeNotRegisteredException {
-        validateLaneCodeFormat(laneCode);
+    public List<IVendingMachineProduct> getTopSellers(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Number of top sellers cannot be negative: " + n);
+        }
+        return popularity.top(n);
+    }
+
+    /**
+     * Validates the lane code and returns its record.
+     */
+    private IProductRecord getRecord(String laneCode) throws LaneCodeNotRegisteredException {
+        return getRecord(LaneCodes.index(laneCode), laneCode);
+    }
 
-        IProductRecord record = lanes.get(laneCode);
+    private IProductRecord getRecord(int index, String laneCode) throws LaneCodeNotRegisteredException {
+        IProductRecord record = lanes[index];
         if (record == null) {
             throw new LaneCodeNotRegisteredException("Lane code not registered: " + laneCode);
         }
-        return record.getNumberOfSales();
+        return record;
     }
 
-    @Override
-    public IVendingMachineProduct getMostPopular() throws LaneCodeNotRegisteredException {
-        if (lanes.isEmpty()) {
-            throw new LaneCodeNotRegisteredException("No products registered in machine");
+    private static void checkCapacity(IProductRecord record, int count) {
+        if (record.getNumberAvailable() + (long) count > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many items for product: " + record.getProduct().getDescription());
         }
+    }
 
-        return lanes.values().stream()
-                .max(Comparator.comparingInt(IProductRecord::getNumberOfSales))
-                .get()
-                .getProduct();
+    private static int checkCount(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Number of items cannot be negative: " + count);
+        }
+        return count;
     }
 }
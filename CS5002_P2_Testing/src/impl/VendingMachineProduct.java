@@ -10,24 +10,42 @@ public class VendingMachineProduct implements IVendingMachineProduct {
 
     private final String laneCode;
     private final String description;
+    private final int price;
 
     /**
      * Constructs a new VendingMachineProduct with the given lane code and
-     * description.
+     * description, and a price of zero.
      *
      * @param laneCode    the lane code (e.g. A1, B2)
      * @param description the description of the product (e.g. "Cola", "Crisps")
      * @throws IllegalArgumentException if laneCode or description is null or blank
      */
     public VendingMachineProduct(String laneCode, String description) {
+        this(laneCode, description, 0);
+    }
+
+    /**
+     * Constructs a new VendingMachineProduct with the given lane code,
+     * description and price.
+     *
+     * @param laneCode    the lane code (e.g. A1, B2)
+     * @param description the description of the product (e.g. "Cola", "Crisps")
+     * @param price       the price of one item in pence
+     * @throws IllegalArgumentException if laneCode or description is null or blank, or price is negative
+     */
+    public VendingMachineProduct(String laneCode, String description, int price) {
         if (laneCode == null || laneCode.isBlank()) {
             throw new IllegalArgumentException("Lane code cannot be null or blank");
         }
         if (description == null || description.isBlank()) {
             throw new IllegalArgumentException("Description cannot be null or blank");
         }
+        if (price < 0) {
+            throw new IllegalArgumentException("Price cannot be negative: " + price);
+        }
         this.laneCode = laneCode;
         this.description = description;
+        this.price = price;
     }
 
     @Override
@@ -40,6 +58,11 @@ public class VendingMachineProduct implements IVendingMachineProduct {
         return description;
     }
 
+    @Override
+    public int getPrice() {
+        return price;
+    }
+
     @Override
     public String toString() {
         return laneCode + " - " + description;
@@ -16,6 +16,16 @@ public interface IFactory {
     IVendingMachineProduct makeVendingMachineProduct(String laneCode, String description);
 
 
+    /**
+     * Creates an instance of {@link IVendingMachineProduct} with a price.
+     * @param laneCode the item's lane code, i.e. which lane the item is in, e.g. A1, A2, A3, B1, ... in the vending machine
+     * @param description the description of the item
+     * @param price the price of one item in pence
+     * @return the product instance
+     */
+    IVendingMachineProduct makeVendingMachineProduct(String laneCode, String description, int price);
+
+
     /**
      * This method creates an instance of {@link IProductRecord} for a new product.
      * @param vendingMachineProduct the product to use for this record
@@ -32,4 +42,12 @@ public interface IFactory {
     IVendingMachine makeVendingMachine();
 
 
+    /**
+     * Creates an instance of {@link IVendingMachine} which can safely be used by many threads at once.
+     *
+     * @return the thread-safe vending machine instance
+     */
+    IVendingMachine makeConcurrentVendingMachine();
+
+
 }
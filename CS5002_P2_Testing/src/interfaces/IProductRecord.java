@@ -42,4 +42,23 @@ public interface IProductRecord {
     void buyItem() throws ProductUnavailableException;
 
 
+    /**
+     * Adds a number of items to the vending machine for the associated product line, as if addItem were called that many times.
+     * @param count the number of items to add
+     * @throws IllegalArgumentException if count is negative
+     * @throws IllegalStateException if the record would hold more than Integer.MAX_VALUE items
+     */
+    void addItems(int count);
+
+
+    /**
+     * Processes the purchase of a number of items in this product line, either all of them or, if not enough are available, none.
+     * @param count the number of items to buy
+     * @throws ProductUnavailableException when fewer than count items are available in the machine
+     * @throws IllegalArgumentException if count is negative
+     * @throws IllegalStateException if the record would count more than Integer.MAX_VALUE sales
+     */
+    void buyItems(int count) throws ProductUnavailableException;
+
+
 }
@@ -1,5 +1,8 @@
 package interfaces;
 
+import java.util.List;
+import java.util.Map;
+
 import exceptions.LaneCodeAlreadyInUseException;
 import exceptions.LaneCodeNotRegisteredException;
 import exceptions.ProductUnavailableException;
@@ -45,6 +48,38 @@ public interface IVendingMachine {
     void buyItem(String laneCode) throws ProductUnavailableException, LaneCodeNotRegisteredException;
 
 
+    /**
+     * Adds a number of items of stock to a vending machine lane, as if addItem were called that many times.
+     * @param laneCode the lane code of the product, e.g. A1, A2, A3, B1, ... in the vending machine
+     * @param count the number of items to add
+     * @throws LaneCodeNotRegisteredException if the lane code has not been registered for use in the vending machine
+     * @throws IllegalArgumentException if count is negative
+     * @throws IllegalStateException if the lane would hold more than Integer.MAX_VALUE items
+     */
+    void addItems(String laneCode, int count) throws LaneCodeNotRegisteredException;
+
+
+    /**
+     * Adds stock to many lanes in one call. Every lane code and count is checked before any stock is added,
+     * so an invalid manifest adds nothing.
+     * @param manifest the number of items to add to each lane, keyed by lane code
+     * @throws LaneCodeNotRegisteredException if any lane code has not been registered for use in the vending machine
+     * @throws IllegalArgumentException if any count is negative
+     * @throws IllegalStateException if any lane would hold more than Integer.MAX_VALUE items
+     */
+    void restock(Map<String, Integer> manifest) throws LaneCodeNotRegisteredException;
+
+
+    /**
+     * Buys a basket of items from many lanes at once: either every item in the basket is bought, or none is.
+     * @param basket the number of items to buy from each lane, keyed by lane code
+     * @throws ProductUnavailableException if any lane has fewer items available than the basket asks for
+     * @throws LaneCodeNotRegisteredException if any lane code has not been registered for use in the vending machine
+     * @throws IllegalArgumentException if any count is negative
+     */
+    void buyItems(Map<String, Integer> basket) throws ProductUnavailableException, LaneCodeNotRegisteredException;
+
+
     /**
      * Gets the number of different products available in the machine.
      * If the machine is setup to sell 2 different products, "Haggis Crisps" and "Irn Bru", then the return should be 2
@@ -64,6 +99,24 @@ public interface IVendingMachine {
     int getTotalNumberOfItems();
 
 
+    /**
+     * Gets the total number of sales over all products (i.e. lanes) currently registered in the vending machine,
+     * i.e. the sum of getNumberOfSales over the registered lanes.
+     *
+     * @return the total number of sales over all registered products
+     */
+    int getTotalNumberOfSales();
+
+
+    /**
+     * Gets the total money taken by the vending machine, in pence, over every sale it has made.
+     * Unlike the other totals this includes sales from lanes which have since been unregistered.
+     *
+     * @return the total revenue in pence
+     */
+    long getTotalRevenue();
+
+
     /**
      * Gets the number of items that are available to buy in the vending machine for a particular product (i.e. lane).
      *
@@ -92,4 +145,15 @@ public interface IVendingMachine {
      */
     IVendingMachineProduct getMostPopular() throws LaneCodeNotRegisteredException;
 
+
+    /**
+     * Gets the products that have been bought the greatest number of times, most bought first.
+     * The order of products with the same number of sales is undefined.
+     *
+     * @param n the maximum number of products to return
+     * @return up to n products in descending order of sales, empty if no lane codes have been registered
+     * @throws IllegalArgumentException if n is negative
+     */
+    List<IVendingMachineProduct> getTopSellers(int n);
+
 }
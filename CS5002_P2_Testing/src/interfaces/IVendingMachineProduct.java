@@ -18,4 +18,10 @@ public interface IVendingMachineProduct {
      */
     String getDescription();
 
+    /**
+     * This method returns the price of one item of the product in pence, which is zero if no price was given.
+     * @return the price in pence
+     */
+    int getPrice();
+
 }
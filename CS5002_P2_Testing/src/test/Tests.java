@@ -1,14 +1,33 @@
 package test;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Named;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import exceptions.LaneCodeAlreadyInUseException;
+import exceptions.LaneCodeNotRegisteredException;
 import exceptions.ProductUnavailableException;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import impl.Factory;
+import impl.LaneCodes;
 import impl.ProductRecord;
 import interfaces.IVendingMachineProduct;
 import interfaces.IVendingMachine;
@@ -116,6 +135,204 @@ public class Tests {
 
     }
 
+    // LANE CODE TESTS
+    @Test
+    public void laneCodeIndicesMatchFormatAndAreUnique() {
+        Set<Integer> indices = new HashSet<>();
+        for (char first = 0; first < 128; first++) {
+            for (char second = 0; second < 128; second++) {
+                String laneCode = "" + first + second;
+                boolean valid = laneCode.matches("[A-Za-z][0-9]|[0-9][A-Za-z]");
+                int index = LaneCodes.indexOf(laneCode);
+                assertEquals(valid, index >= 0, laneCode);
+                if (valid) {
+                    assertTrue(indices.add(index));
+                    assertEquals(laneCode, LaneCodes.laneCode(index));
+                }
+            }
+        }
+        assertEquals(LaneCodes.LANE_COUNT, indices.size());
+        assertEquals(-1, LaneCodes.indexOf(null));
+        assertEquals(-1, LaneCodes.indexOf("A12"));
+    }
+
+    @Test
+    public void invalidLaneCodeIsRejected() {
+        IVendingMachine machine = Factory.getInstance().makeVendingMachine();
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> machine.addItem("AA"));
+        assertTrue(e.getMessage().startsWith("Invalid lane code format: AA"));
+        assertFalse(LaneCodes.indexOf("a1") == LaneCodes.indexOf("A1"));
+    }
+
+    /**
+     * A new machine of each implementation, for tests which both must pass.
+     */
+    static Stream<Named<IVendingMachine>> machines() {
+        return Stream.of(
+            Named.of("VendingMachine", Factory.getInstance().makeVendingMachine()),
+            Named.of("ConcurrentVendingMachine", Factory.getInstance().makeConcurrentVendingMachine())
+        );
+    }
+
+    // POPULARITY TESTS
+    @ParameterizedTest
+    @MethodSource("machines")
+    public void topSellersAreRankedBySales(IVendingMachine machine) throws Exception {
+        String[] lanes = {"A1", "A2", "A3", "B1"};
+        for (String lane : lanes) {
+            machine.registerProduct(Factory.getInstance().makeVendingMachineProduct(lane, "Product " + lane));
+            for (int i = 0; i < 10; i++) machine.addItem(lane);
+        }
+        // A2 x4, B1 x3, A1 x1, A3 never
+        for (int i = 0; i < 4; i++) machine.buyItem("A2");
+        for (int i = 0; i < 3; i++) machine.buyItem("B1");
+        machine.buyItem("A1");
+
+        assertEquals("A2", machine.getMostPopular().getLaneCode());
+        List<IVendingMachineProduct> top = machine.getTopSellers(3);
+        assertEquals(List.of("A2", "B1", "A1"), top.stream().map(IVendingMachineProduct::getLaneCode).toList());
+        assertEquals(4, machine.getTopSellers(10).size());
+        assertEquals(0, machine.getTopSellers(0).size());
+
+        // An unregistered lane drops out of the ranking
+        machine.unregisterProduct(Factory.getInstance().makeVendingMachineProduct("A2", "Product A2"));
+        assertEquals("B1", machine.getMostPopular().getLaneCode());
+        assertEquals(3, machine.getTopSellers(10).size());
+
+        // A lane registered again starts with no sales
+        machine.registerProduct(Factory.getInstance().makeVendingMachineProduct("A2", "New product"));
+        List<IVendingMachineProduct> all = machine.getTopSellers(10);
+        assertEquals(4, all.size());
+        assertEquals("B1", all.get(0).getLaneCode());
+        assertEquals("A1", all.get(1).getLaneCode());
+        assertEquals(Set.of("A2", "A3"), Set.of(all.get(2).getLaneCode(), all.get(3).getLaneCode()));
+    }
+
+    @Test
+    public void mostPopularTracksConcurrentPurchases() throws Exception {
+        IVendingMachine machine = Factory.getInstance().makeConcurrentVendingMachine();
+        String[] lanes = {"A1", "A2", "A3", "A4"};
+        for (String lane : lanes) {
+            machine.registerProduct(Factory.getInstance().makeVendingMachineProduct(lane, "Product " + lane));
+            for (int i = 0; i < 100000; i++) machine.addItem(lane);
+        }
+        runConcurrently(() -> {
+            // Lane A(k+1) gets k+1 purchases in every round
+            for (int round = 0; round < 1000; round++) {
+                for (int k = 0; k < lanes.length; k++) {
+                    for (int i = 0; i <= k; i++) {
+                        machine.buyItem(lanes[k]);
+                    }
+                }
+            }
+        });
+
+        assertEquals("A4", machine.getMostPopular().getLaneCode());
+        assertEquals(List.of("A4", "A3", "A2", "A1"), machine.getTopSellers(4).stream().map(IVendingMachineProduct::getLaneCode).toList());
+        assertEquals(THREADS * 1000 * 4, machine.getNumberOfSales("A4"));
+    }
+
+    // AGGREGATE TESTS
+    @ParameterizedTest
+    @MethodSource("machines")
+    public void totalsFollowStockingSalesAndUnregistration(IVendingMachine machine) throws Exception {
+        IVendingMachineProduct irnBru = Factory.getInstance().makeVendingMachineProduct("A1", "Irn Bru", 150);
+        IVendingMachineProduct tablet = Factory.getInstance().makeVendingMachineProduct("A2", "Tablet", 95);
+        machine.registerProduct(irnBru);
+        machine.registerProduct(tablet);
+        for (int i = 0; i < 5; i++) machine.addItem("A1");
+        for (int i = 0; i < 3; i++) machine.addItem("A2");
+        machine.buyItem("A1");
+        machine.buyItem("A1");
+        machine.buyItem("A2");
+
+        assertEquals(5, machine.getTotalNumberOfItems());
+        assertEquals(3, machine.getTotalNumberOfSales());
+        assertEquals(2 * 150 + 95, machine.getTotalRevenue());
+
+        // A failed purchase changes nothing
+        machine.buyItem("A2");
+        machine.buyItem("A2");
+        assertThrows(ProductUnavailableException.class, () -> machine.buyItem("A2"));
+        assertEquals(3, machine.getTotalNumberOfItems());
+        assertEquals(5, machine.getTotalNumberOfSales());
+        assertEquals(2 * 150 + 3 * 95, machine.getTotalRevenue());
+
+        // Unregistering removes the lane's stock and sales but not its takings
+        machine.unregisterProduct(irnBru);
+        assertEquals(0, machine.getTotalNumberOfItems());
+        assertEquals(3, machine.getTotalNumberOfSales());
+        assertEquals(2 * 150 + 3 * 95, machine.getTotalRevenue());
+        assertThrows(LaneCodeNotRegisteredException.class, () -> machine.buyItem("A1"));
+    }
+
+    @Test
+    public void priceDefaultsToZeroAndCannotBeNegative() {
+        assertEquals(0, Factory.getInstance().makeVendingMachineProduct("A1", "Irn Bru").getPrice());
+        assertThrows(IllegalArgumentException.class, () -> Factory.getInstance().makeVendingMachineProduct("A1", "Irn Bru", -1));
+    }
+
+    // BATCH TESTS
+    @ParameterizedTest
+    @MethodSource("machines")
+    public void restockAddsManyItemsAtOnce(IVendingMachine machine) throws Exception {
+        machine.registerProduct(Factory.getInstance().makeVendingMachineProduct("A1", "Product A1"));
+        machine.registerProduct(Factory.getInstance().makeVendingMachineProduct("A2", "Product A2"));
+        machine.addItems("A1", 40);
+        machine.restock(Map.of("A1", 10, "A2", 24));
+        assertEquals(50, machine.getNumberOfItems("A1"));
+        assertEquals(24, machine.getNumberOfItems("A2"));
+        assertEquals(74, machine.getTotalNumberOfItems());
+
+        // An invalid manifest adds nothing
+        assertThrows(LaneCodeNotRegisteredException.class, () -> machine.restock(Map.of("A1", 5, "B9", 5)));
+        assertThrows(IllegalArgumentException.class, () -> machine.restock(Map.of("A1", 5, "A2", -1)));
+        assertThrows(IllegalArgumentException.class, () -> machine.addItems("A1", -1));
+        Map<String, Integer> overfull = new LinkedHashMap<>();
+        overfull.put("A1", 5);
+        overfull.put("A2", Integer.MAX_VALUE);
+        assertThrows(IllegalStateException.class, () -> machine.restock(overfull));
+        assertThrows(IllegalStateException.class, () -> machine.addItems("A2", Integer.MAX_VALUE));
+        assertEquals(50, machine.getNumberOfItems("A1"));
+        assertEquals(24, machine.getNumberOfItems("A2"));
+        assertEquals(74, machine.getTotalNumberOfItems());
+    }
+
+    @ParameterizedTest
+    @MethodSource("machines")
+    public void basketIsBoughtWhollyOrNotAtAll(IVendingMachine machine) throws Exception {
+        machine.registerProduct(Factory.getInstance().makeVendingMachineProduct("A1", "Product A1", 100));
+        machine.registerProduct(Factory.getInstance().makeVendingMachineProduct("A2", "Product A2", 50));
+        machine.registerProduct(Factory.getInstance().makeVendingMachineProduct("A3", "Product A3", 75));
+        machine.restock(Map.of("A1", 5, "A2", 5, "A3", 1));
+
+        machine.buyItems(Map.of("A1", 3, "A2", 1));
+        assertEquals(2, machine.getNumberOfItems("A1"));
+        assertEquals(4, machine.getNumberOfItems("A2"));
+        assertEquals(4, machine.getTotalNumberOfSales());
+        assertEquals(3 * 100 + 50, machine.getTotalRevenue());
+        assertEquals("A1", machine.getMostPopular().getLaneCode());
+
+        // A3 cannot supply two, so nothing is bought from any lane, whichever order the lanes are reserved in
+        Map<String, Integer> first = new LinkedHashMap<>();
+        first.put("A1", 1);
+        first.put("A2", 1);
+        first.put("A3", 2);
+        Map<String, Integer> last = new LinkedHashMap<>();
+        last.put("A3", 2);
+        last.put("A1", 1);
+        for (Map<String, Integer> basket : List.of(first, last)) {
+            assertThrows(ProductUnavailableException.class, () -> machine.buyItems(basket));
+        }
+        assertThrows(LaneCodeNotRegisteredException.class, () -> machine.buyItems(Map.of("A1", 1, "B9", 1)));
+        assertEquals(2, machine.getNumberOfItems("A1"));
+        assertEquals(4, machine.getNumberOfItems("A2"));
+        assertEquals(1, machine.getNumberOfItems("A3"));
+        assertEquals(7, machine.getTotalNumberOfItems());
+        assertEquals(4, machine.getTotalNumberOfSales());
+        assertEquals(3 * 100 + 50, machine.getTotalRevenue());
+    }
+
     //OVERALL FUNCTIONALITY TESTS
     @Test
     public void overallFunctionality() throws Exception {
@@ -196,4 +413,224 @@ public class Tests {
 
     }
 
+    // CONCURRENCY TESTS
+    private static final int THREADS = 8;
+
+    /**
+     * Runs the task on THREADS threads, all released at once, waits for them to finish and rethrows the first exception or error any of them threw.
+     */
+    private static void runConcurrently(ThrowingRunnable task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int t = 0; t < THREADS; t++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    task.run();
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS));
+        Throwable first = failure.get();
+        if (first instanceof Exception e) {
+            throw e;
+        }
+        if (first instanceof Error e) {
+            throw e;
+        }
+    }
+
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+
+    @Test
+    public void concurrentBuyersNeverOversell() throws Exception {
+        IVendingMachine machine = Factory.getInstance().makeConcurrentVendingMachine();
+        machine.registerProduct(Factory.getInstance().makeVendingMachineProduct("A1", "Irn Bru"));
+        int stock = 10000;
+        for (int i = 0; i < stock; i++) machine.addItem("A1");
+
+        AtomicInteger bought = new AtomicInteger();
+        AtomicInteger refused = new AtomicInteger();
+        runConcurrently(() -> {
+            for (int i = 0; i < stock / 2; i++) {
+                try {
+                    machine.buyItem("A1");
+                    bought.incrementAndGet();
+                } catch (ProductUnavailableException e) {
+                    refused.incrementAndGet();
+                }
+            }
+        });
+
+        assertEquals(stock, bought.get());
+        assertEquals(THREADS * (stock / 2) - stock, refused.get());
+        assertEquals(0, machine.getNumberOfItems("A1"));
+        assertEquals(stock, machine.getNumberOfSales("A1"));
+    }
+
+    @Test
+    public void concurrentRestockAndPurchaseKeepCountsConsistent() throws Exception {
+        IVendingMachine machine = Factory.getInstance().makeConcurrentVendingMachine();
+        String[] lanes = {"A1", "A2", "B1", "B2"};
+        for (String lane : lanes) {
+            machine.registerProduct(Factory.getInstance().makeVendingMachineProduct(lane, "Product " + lane));
+        }
+
+        AtomicInteger added = new AtomicInteger();
+        AtomicInteger bought = new AtomicInteger();
+        AtomicInteger thread = new AtomicInteger();
+        runConcurrently(() -> {
+            boolean stocker = thread.getAndIncrement() % 2 == 0;
+            for (int i = 0; i < 20000; i++) {
+                String lane = lanes[i % lanes.length];
+                if (stocker) {
+                    machine.addItem(lane);
+                    added.incrementAndGet();
+                } else {
+                    try {
+                        machine.buyItem(lane);
+                        bought.incrementAndGet();
+                    } catch (ProductUnavailableException e) {
+                        // Lane momentarily empty
+                    }
+                }
+            }
+        });
+
+        int sales = 0;
+        for (String lane : lanes) {
+            assertTrue(machine.getNumberOfItems(lane) >= 0);
+            sales += machine.getNumberOfSales(lane);
+        }
+        assertEquals(bought.get(), sales);
+        assertEquals(added.get() - bought.get(), machine.getTotalNumberOfItems());
+    }
+
+    @Test
+    public void concurrentTotalsMatchLanesDespiteUnregistration() throws Exception {
+        IVendingMachine machine = Factory.getInstance().makeConcurrentVendingMachine();
+        String[] lanes = {"A1", "A2", "A3", "A4"};
+        int[] prices = {100, 120, 80, 65};
+        for (int k = 0; k < lanes.length; k++) {
+            machine.registerProduct(Factory.getInstance().makeVendingMachineProduct(lanes[k], "Product " + lanes[k], prices[k]));
+        }
+
+        AtomicLong revenue = new AtomicLong();
+        AtomicInteger thread = new AtomicInteger();
+        runConcurrently(() -> {
+            boolean churner = thread.getAndIncrement() == 0;
+            for (int i = 0; i < 20000; i++) {
+                int k = i % lanes.length;
+                if (churner && i % 100 == 0) {
+                    // Keep replacing the product in lane A4 while the other threads use it
+                    IVendingMachineProduct product = Factory.getInstance().makeVendingMachineProduct("A4", "Product A4", prices[3]);
+                    machine.unregisterProduct(product);
+                    machine.registerProduct(product);
+                }
+                try {
+                    machine.addItem(lanes[k]);
+                    machine.buyItem(lanes[(k + 1) % lanes.length]);
+                    revenue.addAndGet(prices[(k + 1) % lanes.length]);
+                } catch (ProductUnavailableException | LaneCodeNotRegisteredException e) {
+                    // Lane momentarily empty, or A4 momentarily unregistered
+                }
+            }
+        });
+
+        int items = 0;
+        int sales = 0;
+        for (String lane : lanes) {
+            items += machine.getNumberOfItems(lane);
+            sales += machine.getNumberOfSales(lane);
+        }
+        assertEquals(items, machine.getTotalNumberOfItems());
+        assertEquals(sales, machine.getTotalNumberOfSales());
+        assertEquals(revenue.get(), machine.getTotalRevenue());
+    }
+
+    @Test
+    public void concurrentBasketsNeverSellPartOfABasket() throws Exception {
+        IVendingMachine machine = Factory.getInstance().makeConcurrentVendingMachine();
+        String[] lanes = {"A1", "A2", "A3", "A4"};
+        for (String lane : lanes) {
+            machine.registerProduct(Factory.getInstance().makeVendingMachineProduct(lane, "Product " + lane));
+        }
+        // A1 runs out first, and the other lanes must keep what its failed baskets asked for
+        machine.restock(Map.of("A1", 1000, "A2", 1500, "A3", 1500, "A4", 1500));
+
+        AtomicInteger baskets = new AtomicInteger();
+        AtomicInteger thread = new AtomicInteger();
+        runConcurrently(() -> {
+            // Each thread reserves the lanes in a different order
+            int start = thread.getAndIncrement() % lanes.length;
+            Map<String, Integer> basket = new LinkedHashMap<>();
+            for (int k = 0; k < lanes.length; k++) {
+                basket.put(lanes[(start + k) % lanes.length], 1);
+            }
+            for (int i = 0; i < 1000; i++) {
+                try {
+                    machine.buyItems(basket);
+                    baskets.incrementAndGet();
+                } catch (ProductUnavailableException e) {
+                    // A1 is empty
+                }
+            }
+        });
+
+        assertEquals(1000, baskets.get());
+        assertEquals(0, machine.getNumberOfItems("A1"));
+        for (String lane : lanes) {
+            assertEquals(1000, machine.getNumberOfSales(lane));
+        }
+        assertEquals(3 * 500, machine.getTotalNumberOfItems());
+        assertEquals(4 * 1000, machine.getTotalNumberOfSales());
+    }
+
+    @ParameterizedTest
+    @MethodSource("machines")
+    public void salesNeverCarryIntoStock(IVendingMachine machine) throws Exception {
+        machine.registerProduct(Factory.getInstance().makeVendingMachineProduct("A1", "Product A1"));
+        machine.registerProduct(Factory.getInstance().makeVendingMachineProduct("A2", "Product A2"));
+        machine.addItems("A1", Integer.MAX_VALUE);
+        machine.buyItems(Map.of("A1", Integer.MAX_VALUE));
+        machine.addItems("A1", 1);
+        machine.addItems("A2", 1);
+
+        // A basket failing on A1 gives back what it took from A2
+        Map<String, Integer> basket = new LinkedHashMap<>();
+        basket.put("A2", 1);
+        basket.put("A1", 1);
+        assertThrows(IllegalStateException.class, () -> machine.buyItems(basket));
+        assertThrows(IllegalStateException.class, () -> machine.buyItem("A1"));
+        assertEquals(1, machine.getNumberOfItems("A1"));
+        assertEquals(Integer.MAX_VALUE, machine.getNumberOfSales("A1"));
+        assertEquals(1, machine.getNumberOfItems("A2"));
+        assertEquals(0, machine.getNumberOfSales("A2"));
+        assertEquals(2, machine.getTotalNumberOfItems());
+    }
+
+    @Test
+    public void concurrentRegistrationAcceptsOneProductPerLane() throws Exception {
+        IVendingMachine machine = Factory.getInstance().makeConcurrentVendingMachine();
+        AtomicInteger registered = new AtomicInteger();
+        runConcurrently(() -> {
+            try {
+                machine.registerProduct(Factory.getInstance().makeVendingMachineProduct("C1", "Tunnock's Teacake"));
+                registered.incrementAndGet();
+            } catch (LaneCodeAlreadyInUseException e) {
+                // Another thread registered the lane first
+            }
+        });
+
+        assertEquals(1, registered.get());
+        assertEquals(1, machine.getNumberOfProducts());
+    }
+
 }